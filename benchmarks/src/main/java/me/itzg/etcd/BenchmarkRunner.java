@@ -0,0 +1,28 @@
+package me.itzg.etcd;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The entry point of <code>benchmarks.jar</code>. Accepts the usual JMH arguments, such as a pattern selecting
+ * the benchmarks to run, and always attaches the GC profiler, so that each result is reported with its bytes
+ * allocated per operation (<code>gc.alloc.rate.norm</code>).
+ *
+ * @author Geoff Bourne
+ * @since 7/5/2015
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,77 @@
+package me.itzg.etcd;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of etcd responses into {@link Response} and {@link Node}, as done by the message converter
+ * of each request.
+ *
+ * @author Geoff Bourne
+ * @since 7/5/2015
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodingBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private byte[] single;
+    private byte[] directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Response response = new Response();
+        response.setAction("get");
+        response.setNode(node("/bench/value", "v", 5));
+        single = objectMapper.writeValueAsBytes(response);
+
+        final Node dir = node("/bench/dir", null, 2);
+        dir.setDir(true);
+        final List<Node> children = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            children.add(node("/bench/dir/key" + i, "value" + i, 10 + i));
+        }
+        dir.setNodes(children);
+        response.setNode(dir);
+        directory = objectMapper.writeValueAsBytes(response);
+    }
+
+    private static Node node(String key, String value, int index) {
+        final Node node = new Node();
+        node.setKey(key);
+        node.setValue(value);
+        node.setCreatedIndex(index);
+        node.setModifiedIndex(index);
+        return node;
+    }
+
+    @Benchmark
+    public Response decodeSingle() throws IOException {
+        return objectMapper.readValue(single, Response.class);
+    }
+
+    @Benchmark
+    public Response decodeDirectory() throws IOException {
+        return objectMapper.readValue(directory, Response.class);
+    }
+}
@@ -0,0 +1,93 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trips of the blocking client against an in-process {@link StubEtcdServer}, using the pooled transport
+ * so that the client rather than connection setup is measured. The stub runs in the same JVM, so the
+ * reported allocations include its share of each request.
+ *
+ * @author Geoff Bourne
+ * @since 7/5/2015
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EtcdServiceBenchmark {
+    private static final int CHILDREN = 100;
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+    private EtcdService.BulkGetter loadedGetter;
+    private EtcdService.BulkGetter shallowGetter;
+
+    @Setup
+    public void setUp() throws IOException, EtcdException {
+        server = new StubEtcdServer();
+        server.putValue("/bench/value", "v");
+        for (int i = 0; i < CHILDREN; ++i) {
+            server.putValue("/bench/dir/key" + i, "value" + i);
+        }
+
+        etcdService = new EtcdService(new URI[]{server.getUri()}, new TransportSettings());
+        loadedGetter = etcdService.bulkLoad(false, false, "bench", "dir");
+        shallowGetter = etcdService.bulkGet("bench", "dir");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        etcdService.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public Node get() throws IOException, EtcdException {
+        return etcdService.get("bench", "value");
+    }
+
+    @Benchmark
+    public void put() throws IOException, EtcdException {
+        etcdService.put("v", "bench", "value");
+    }
+
+    /**
+     * The key always exists, so this measures the conflict path.
+     */
+    @Benchmark
+    public boolean putIfNotExists() throws IOException, EtcdException {
+        return etcdService.putIfNotExists("v", "bench", "value");
+    }
+
+    @Benchmark
+    public boolean updateKeyAtomically() throws IOException, EtcdException {
+        return etcdService.updateKeyAtomically("v", "v", "bench", "value");
+    }
+
+    @Benchmark
+    public Node bulkGetterLoaded() throws IOException, EtcdException {
+        return loadedGetter.get("key50");
+    }
+
+    @Benchmark
+    public Node bulkGetterRequested() throws IOException, EtcdException {
+        return shallowGetter.get("key50");
+    }
+}
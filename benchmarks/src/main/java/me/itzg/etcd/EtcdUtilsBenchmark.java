@@ -0,0 +1,39 @@
+package me.itzg.etcd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/5/2015
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EtcdUtilsBenchmark {
+    private final String[] path = {"services", "web", "instances", "node-1"};
+    private final String key = "/services/web/instances/node-1";
+
+    @Benchmark
+    public String join() {
+        return EtcdUtils.join(path);
+    }
+
+    @Benchmark
+    public List<String> splitToList() {
+        return EtcdUtils.splitToList(key);
+    }
+}
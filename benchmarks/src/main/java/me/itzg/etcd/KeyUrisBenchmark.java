@@ -0,0 +1,67 @@
+package me.itzg.etcd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link KeyUris} with the {@link UriComponentsBuilder} approach it replaced, including the
+ * allocations per operation reported by the GC profiler that {@link BenchmarkRunner} attaches.
+ *
+ * @author Geoff Bourne
+ * @since 7/4/2015
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyUrisBenchmark {
+    private final URI machine = URI.create("http://127.0.0.1:2379");
+    private final KeyUris keyUris = new KeyUris(new URI[]{machine});
+
+    private final String[] path = {"services", "web", "instances", "node-1"};
+    private final String key = "/services/web/instances/node-1";
+
+    @Benchmark
+    public URI keyUrisPath() {
+        return keyUris.build(machine, path);
+    }
+
+    @Benchmark
+    public URI keyUrisKeyWithQuery() {
+        return keyUris.buildKey(machine, key, "prevIndex", "12345");
+    }
+
+    @Benchmark
+    public URI uriComponentsBuilderPath() {
+        final String[] copy = path.clone();
+        if (!copy[0].startsWith(EtcdService.SEP)) {
+            copy[0] = EtcdService.SEP + copy[0];
+        }
+        return UriComponentsBuilder.fromUri(machine)
+                .path("/v2/keys")
+                .path(EtcdUtils.join(copy))
+                .build().toUri();
+    }
+
+    @Benchmark
+    public URI uriComponentsBuilderKeyWithQuery() {
+        return UriComponentsBuilder.fromUri(machine)
+                .path("/v2/keys")
+                .path(key)
+                .queryParam("prevIndex", "12345")
+                .build().toUri();
+    }
+}
@@ -0,0 +1,511 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+
+/**
+ * The non-blocking counterpart of {@link EtcdService}. Each operation returns immediately with a
+ * {@link ListenableFuture} that completes when etcd responds, so many operations can be in flight
+ * on just the transport's I/O threads.
+ * <p>
+ * Unreachable machines are failed over exactly like {@link EtcdService#access(EtcdService.Accessor)}:
+ * the operation is retried on the next machine until every machine has been tried, at which point
+ * the future fails with {@link NoUsableMachinesException}. Like {@link EtcdService}, etcd's client errors are
+ * decoded from the response rather than raised, so a missing key or a failed compare costs no exception.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 6/28/2015
+ */
+public class AsyncEtcdService implements Closeable {
+    private static Logger LOG = LoggerFactory.getLogger(AsyncEtcdService.class);
+
+    private final Machines machines;
+    private final KeyUris keyUris;
+    private final AsyncEtcdTemplate asyncEtcdTemplate;
+    private final AsyncClientHttpRequestFactory ownedRequestFactory;
+    private volatile EtcdMetrics metrics = EtcdMetrics.NOOP;
+
+    /**
+     * Uses a non-blocking transport with the default {@link TransportSettings}.
+     */
+    public AsyncEtcdService(URI[] machines) {
+        this(machines, new TransportSettings());
+    }
+
+    /**
+     * Uses a non-blocking transport configured by the given settings. The connection pool and its I/O threads
+     * are released by {@link #close()}.
+     */
+    public AsyncEtcdService(URI[] machines, TransportSettings transportSettings) {
+        this(machines, transportSettings.createAsyncRequestFactory(), true);
+    }
+
+    /**
+     * Uses the given request factory for all etcd requests. Its lifecycle remains with the caller.
+     */
+    public AsyncEtcdService(URI[] machines, AsyncClientHttpRequestFactory requestFactory) {
+        this(machines, requestFactory, false);
+    }
+
+    private AsyncEtcdService(URI[] machines, AsyncClientHttpRequestFactory requestFactory, boolean owned) {
+        this.machines = new Machines(machines);
+        this.keyUris = new KeyUris(machines);
+        this.asyncEtcdTemplate = new AsyncEtcdTemplate(requestFactory);
+        this.ownedRequestFactory = owned ? requestFactory : null;
+    }
+
+    public ListenableFuture<Void> delete(final String... path) {
+        return access(new AsyncAccessor<Void>(EtcdOperation.DELETE, HttpMethod.DELETE) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.build(uri, path);
+            }
+        });
+    }
+
+    public ListenableFuture<Void> put(String value, String... path) {
+        return put(value, 0, path);
+    }
+
+    /**
+     * @param ttl in seconds after which etcd expires the key or, if zero, the key never expires
+     */
+    public ListenableFuture<Void> put(final String value, final int ttl, final String... path) {
+        return access(new AsyncAccessor<Void>(EtcdOperation.PUT, HttpMethod.PUT,
+                "value", value,
+                EtcdService.ttlParam(ttl), String.valueOf(ttl)) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.build(uri, path);
+            }
+        });
+    }
+
+    /**
+     * @param value the value of the key
+     * @param path  path to the key to put
+     * @return a future of true if the key did not previously exist
+     */
+    public ListenableFuture<Boolean> putIfNotExists(String value, String... path) {
+        return putIfNotExists(value, 0, path);
+    }
+
+    /**
+     * @param value the value of the key
+     * @param ttl   in seconds after which etcd expires the key or, if zero, the key never expires
+     * @param path  path to the key to put
+     * @return a future of true if the key did not previously exist
+     */
+    public ListenableFuture<Boolean> putIfNotExists(final String value, final int ttl, final String... path) {
+        return access(new ConditionalAccessor(EtcdOperation.PUT_IF_NOT_EXISTS, HttpMethod.PUT,
+                "prevExist", "false",
+                "value", value,
+                EtcdService.ttlParam(ttl), String.valueOf(ttl)) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.build(uri, path);
+            }
+        });
+    }
+
+    public ListenableFuture<Boolean> createDirIfNotExists(String... path) {
+        return createDirIfNotExists(0, path);
+    }
+
+    /**
+     * @param ttl  in seconds after which etcd expires the directory, along with everything in it, or, if zero,
+     *             the directory never expires
+     * @param path path to the directory to create
+     * @return a future of true if the directory did not previously exist
+     */
+    public ListenableFuture<Boolean> createDirIfNotExists(final int ttl, final String... path) {
+        return access(new ConditionalAccessor(EtcdOperation.CREATE_DIR_IF_NOT_EXISTS, HttpMethod.PUT,
+                "prevExist", "false",
+                "dir", "true",
+                EtcdService.ttlParam(ttl), String.valueOf(ttl)) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.build(uri, path);
+            }
+        });
+    }
+
+    /**
+     * @param path
+     * @return a future of the etcd node at that path or null if it didn't exist
+     */
+    public ListenableFuture<Node> get(final String... path) {
+        return access(new AsyncAccessor<Node>(EtcdOperation.GET, HttpMethod.GET) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.build(uri, path);
+            }
+
+            @Override
+            protected Node handleResponse(Response response) throws EtcdException {
+                if (EtcdService.is(response, EtcdError.EcodeKeyNotFound)) {
+                    return null;
+                }
+                EtcdService.checkSucceeded(response);
+                return response.getNode();
+            }
+        });
+    }
+
+    /**
+     * @param recursive if true, the nodes beneath a directory are included at every depth rather than just
+     *                  its immediate children
+     * @return a future of the full response, such as a directory listing, or null if the node didn't exist
+     */
+    public ListenableFuture<Response> getResponse(final boolean recursive, final String... path) {
+        return access(new AsyncAccessor<Response>(EtcdOperation.GET_RESPONSE, HttpMethod.GET) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return recursive ? keyUris.build(uri, path, "recursive", "true") : keyUris.build(uri, path);
+            }
+
+            @Override
+            protected Response handleResponse(Response response) throws EtcdException {
+                if (EtcdService.is(response, EtcdError.EcodeKeyNotFound)) {
+                    return null;
+                }
+                EtcdService.checkSucceeded(response);
+                return response;
+            }
+        });
+    }
+
+    /**
+     * Like {@link #getResponse(boolean, String...)}, but a missing path is reported with the index of the read.
+     *
+     * @return a future of the full response or, if the path didn't exist, etcd's
+     * {@link EtcdError#EcodeKeyNotFound} error, whose {@link Response#getIndex()} is still the etcd index as of
+     * the read
+     */
+    ListenableFuture<Response> getResponseOrMissing(final boolean recursive, final String... path) {
+        return access(new AsyncAccessor<Response>(EtcdOperation.GET_RESPONSE, HttpMethod.GET) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return recursive ? keyUris.build(uri, path, "recursive", "true") : keyUris.build(uri, path);
+            }
+
+            @Override
+            protected Response handleResponse(Response response) throws EtcdException {
+                if (!EtcdService.isMissing(response)) {
+                    EtcdService.checkSucceeded(response);
+                }
+                return response;
+            }
+        });
+    }
+
+    /**
+     * Long-polls etcd for the next change of the node at the given path, without holding a thread while
+     * waiting.
+     *
+     * @param waitIndex the index of the earliest change to report, typically one more than the last
+     *                  <code>modifiedIndex</code> seen, or zero for the next change made
+     * @param recursive if true, changes to any node beneath the given path are also reported
+     * @return a future of the change or null if the read timeout elapsed first. It fails with a
+     * {@link ClientEtcdException} of {@link EtcdError#EcodeEventIndexCleared} if etcd no longer has the
+     * history going back to <code>waitIndex</code>.
+     */
+    public ListenableFuture<Response> waitForChange(final long waitIndex, final boolean recursive,
+                                                    final String... path) {
+        return access(new AsyncAccessor<Response>(EtcdOperation.WAIT_FOR_CHANGE, HttpMethod.GET) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.build(uri, path,
+                        "wait", "true",
+                        waitIndex > 0 ? "waitIndex" : null, String.valueOf(waitIndex),
+                        recursive ? "recursive" : null, "true");
+            }
+
+            @Override
+            protected Response handleResponse(Response response) throws EtcdException {
+                EtcdService.checkSucceeded(response);
+                return response;
+            }
+
+            @Override
+            protected boolean isReadTimeoutExpected() {
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @param newValue
+     * @param prevIndex the existing <code>modifiedIndex</code> of the node to update
+     * @param key       the path to the key to update
+     * @return a future of true if the update was successful
+     */
+    public ListenableFuture<Boolean> updateKeyAtomically(String newValue, long prevIndex, String key) {
+        return updateKeyAtomically(newValue, prevIndex, 0, key);
+    }
+
+    /**
+     * @param newValue
+     * @param prevIndex the existing <code>modifiedIndex</code> of the node to update
+     * @param ttl       in seconds after which etcd expires the updated key or, if zero, the key no longer expires,
+     *                  since etcd replaces the TTL of a key along with its value
+     * @param key       the path to the key to update
+     * @return a future of true if the update was successful
+     */
+    public ListenableFuture<Boolean> updateKeyAtomically(final String newValue, final long prevIndex, final int ttl,
+                                                         final String key) {
+        return access(new ConditionalAccessor(EtcdOperation.UPDATE_KEY_ATOMICALLY, HttpMethod.PUT,
+                "value", newValue,
+                "prevIndex", String.valueOf(prevIndex),
+                EtcdService.ttlParam(ttl), String.valueOf(ttl)) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.buildKey(uri, key);
+            }
+        });
+    }
+
+    public ListenableFuture<Boolean> updateKeyAtomically(String newValue, String previousValue, String... path) {
+        return updateKeyAtomically(newValue, previousValue, 0, path);
+    }
+
+    /**
+     * @param ttl in seconds after which etcd expires the updated key or, if zero, the key no longer expires,
+     *            since etcd replaces the TTL of a key along with its value
+     * @return a future of true if the update was successful
+     */
+    public ListenableFuture<Boolean> updateKeyAtomically(final String newValue, final String previousValue,
+                                                         final int ttl, final String... path) {
+        return access(new ConditionalAccessor(EtcdOperation.UPDATE_KEY_ATOMICALLY, HttpMethod.PUT,
+                "prevValue", previousValue,
+                "value", newValue,
+                EtcdService.ttlParam(ttl), String.valueOf(ttl)) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.build(uri, path);
+            }
+        });
+    }
+
+    public ListenableFuture<Void> deleteKey(final String key) {
+        return access(new AsyncAccessor<Void>(EtcdOperation.DELETE_KEY, HttpMethod.DELETE) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.buildKey(uri, key);
+            }
+        });
+    }
+
+    /**
+     * @param key
+     * @param prevIndex
+     * @return a future of true if this caller was able to perform the deletion
+     */
+    public ListenableFuture<Boolean> deleteKeyAtomically(final String key, final long prevIndex) {
+        return access(new ConditionalAccessor(EtcdOperation.DELETE_KEY_ATOMICALLY, HttpMethod.DELETE) {
+            @Override
+            protected URI buildUri(URI uri) {
+                return keyUris.buildKey(uri, key, "prevIndex", String.valueOf(prevIndex));
+            }
+        });
+    }
+
+    protected <T> ListenableFuture<T> access(AsyncAccessor<T> accessor) {
+        final SettableListenableFuture<T> result = new SettableListenableFuture<>();
+        final EtcdMetrics metrics = this.metrics;
+        if (metrics != EtcdMetrics.NOOP) {
+            measure(metrics, accessor.operation, result);
+        }
+        attempt(accessor, result, 0);
+        return result;
+    }
+
+    private static <T> void measure(final EtcdMetrics metrics, final EtcdOperation operation,
+                                    ListenableFuture<T> result) {
+        final long start = System.nanoTime();
+        metrics.operationStarted(operation);
+        result.addCallback(new ListenableFutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                if (operation.isConditional() && value instanceof Boolean) {
+                    metrics.conditionCompleted(operation, (Boolean) value);
+                }
+                metrics.operationCompleted(operation, System.nanoTime() - start, true);
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                metrics.operationCompleted(operation, System.nanoTime() - start, false);
+            }
+        });
+    }
+
+    private <T> void attempt(final AsyncAccessor<T> accessor, final SettableListenableFuture<T> result,
+                             final int tries) {
+        if (tries >= machines.size()) {
+            result.setException(new NoUsableMachinesException());
+            return;
+        }
+
+        final Machines.Sticky observed = machines.sticky();
+        final URI machine = accessor.read ? machines.forRead(observed) : machines.forWrite(observed);
+        final ListenableFuture<Response> responseFuture;
+        try {
+            responseFuture = accessor.send(accessor.buildUri(machine));
+        } catch (RuntimeException e) {
+            result.setException(e);
+            return;
+        }
+
+        result.addCallback(new ListenableFutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                // such as a long-poll given up on by its caller, which would otherwise hold its connection
+                if (result.isCancelled()) {
+                    responseFuture.cancel(true);
+                }
+            }
+        });
+        responseFuture.addCallback(new ListenableFutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    result.set(accessor.handleResponse(response));
+                } catch (Exception e) {
+                    result.setException(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                if (Machines.isConnectFailure(ex)) {
+                    LOG.info("Connection to {} failed: {}", machine, ex.getMessage());
+                    metrics.machineError(machine, ex);
+                    if (machines.failover(machine, observed)) {
+                        metrics.failover(machine);
+                    }
+                    attempt(accessor, result, tries + 1);
+                } else if (accessor.isReadTimeoutExpected() && isReadTimeout(ex)) {
+                    result.set(null);
+                } else {
+                    if (ex instanceof HttpServerErrorException) {
+                        metrics.machineError(machine, ex);
+                    }
+                    result.setException(ex);
+                }
+            }
+        });
+    }
+
+    private static boolean isReadTimeout(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param metrics receives the timing and outcome of every operation or, if {@link EtcdMetrics#NOOP},
+     *                nothing is measured
+     */
+    public void setMetrics(EtcdMetrics metrics) {
+        this.metrics = metrics != null ? metrics : EtcdMetrics.NOOP;
+    }
+
+    /**
+     * Releases the connection pool and I/O threads, if this service created them from {@link TransportSettings}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownedRequestFactory instanceof DisposableBean) {
+            try {
+                ((DisposableBean) ownedRequestFactory).destroy();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Failed to release transport", e);
+            }
+        }
+    }
+
+    /**
+     * Performs one attempt of an operation against a specific machine and then interprets the outcome.
+     * By default, a successful response completes with null and an etcd error fails the operation with a
+     * {@link ClientEtcdException}.
+     */
+    protected abstract class AsyncAccessor<T> {
+        private final EtcdOperation operation;
+        private final HttpMethod method;
+        private final String[] params;
+        private final boolean read;
+
+        /**
+         * @param operation reported to the {@link #setMetrics(EtcdMetrics) metrics}
+         * @param params    alternating form parameter names and values to send as the request body
+         */
+        protected AsyncAccessor(EtcdOperation operation, HttpMethod method, String... params) {
+            this.operation = operation;
+            this.method = method;
+            this.params = params;
+            this.read = method == HttpMethod.GET;
+        }
+
+        protected abstract URI buildUri(URI uri);
+
+        protected ListenableFuture<Response> send(URI builtUri) {
+            return asyncEtcdTemplate.exchange(builtUri, method,
+                    params.length > 0 ? EtcdService.buildFormRequest(method, builtUri, params) : null);
+        }
+
+        /**
+         * @param response the decoded response, including etcd's client errors
+         */
+        protected T handleResponse(Response response) throws EtcdException {
+            EtcdService.checkSucceeded(response);
+            return null;
+        }
+
+        /**
+         * @return true if running out of read timeout is a normal outcome, such as of a long-poll, which then
+         * completes with null
+         */
+        protected boolean isReadTimeoutExpected() {
+            return false;
+        }
+    }
+
+    /**
+     * Interprets a successful response as true and a failed precondition, or an existing key, as false.
+     */
+    private abstract class ConditionalAccessor extends AsyncAccessor<Boolean> {
+        protected ConditionalAccessor(EtcdOperation operation, HttpMethod method, String... params) {
+            super(operation, method, params);
+        }
+
+        @Override
+        protected Boolean handleResponse(Response response) throws EtcdException {
+            return EtcdService.succeededUnlessConflict(response);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Response;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
+
+import java.net.URI;
+
+/**
+ * The non-blocking counterpart of {@link EtcdTemplate}, completing with etcd's client errors decoded into a
+ * {@link Response} rather than failing with an exception.
+ *
+ * @author Geoff Bourne
+ * @since 7/20/2015
+ */
+class AsyncEtcdTemplate extends AsyncRestTemplate {
+    private final ResponseExtractor<Response> responseExtractor;
+
+    AsyncEtcdTemplate(AsyncClientHttpRequestFactory requestFactory) {
+        super(requestFactory);
+        setErrorHandler(EtcdTemplate.SERVER_ERROR_HANDLER);
+        responseExtractor = EtcdTemplate.responseExtractor(getMessageConverters());
+    }
+
+    /**
+     * @param request the form to send or null for none
+     * @return a future of the decoded response, where a non-zero {@link Response#getErrorCode()} reports an
+     * etcd error
+     */
+    ListenableFuture<Response> exchange(URI uri, HttpMethod method, HttpEntity<?> request) throws RestClientException {
+        return execute(uri, method,
+                request != null ? httpEntityCallback(request, Response.class) : acceptHeaderRequestCallback(Response.class),
+                responseExtractor);
+    }
+}
@@ -0,0 +1,70 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+
+/**
+ * The outcome of one operation of an {@link EtcdBatch}.
+ *
+ * @author Geoff Bourne
+ * @since 7/7/2015
+ */
+public class BatchResult {
+    private final EtcdOperation operation;
+    private final String key;
+    private final Node node;
+    private final EtcdError error;
+    private final Exception exception;
+
+    BatchResult(EtcdOperation operation, String key, Node node, EtcdError error, Exception exception) {
+        this.operation = operation;
+        this.key = key;
+        this.node = node;
+        this.error = error;
+        this.exception = exception;
+    }
+
+    public EtcdOperation getOperation() {
+        return operation;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isSucceeded() {
+        return error == null && exception == null;
+    }
+
+    /**
+     * @return the node as of the operation, if etcd reported one
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * @return the error reported by etcd, such as {@link EtcdError#EcodeTestFailed} for a compare-and-swap
+     * conflict, or null if etcd didn't report one
+     */
+    public EtcdError getError() {
+        return error;
+    }
+
+    /**
+     * @return the failure that prevented etcd from handling the operation, such as
+     * {@link NoUsableMachinesException}, or null
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "operation=" + operation +
+                ", key='" + key + '\'' +
+                ", error=" + error +
+                ", exception=" + exception +
+                '}';
+    }
+}
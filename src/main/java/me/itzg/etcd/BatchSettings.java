@@ -0,0 +1,37 @@
+package me.itzg.etcd;
+
+/**
+ * Configures how {@link EtcdService#execute(EtcdBatch, BatchSettings)} spreads a batch over the cluster.
+ *
+ * @author Geoff Bourne
+ * @since 7/7/2015
+ */
+public class BatchSettings {
+    private int concurrency = 8;
+    private double targetThroughput;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param concurrency the number of operations in flight at once. For these to use separate connections,
+     *                    the {@link TransportSettings#setMaxConnectionsPerMachine(int) pool} must allow
+     *                    at least as many.
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public double getTargetThroughput() {
+        return targetThroughput;
+    }
+
+    /**
+     * @param targetThroughput the operations per second to not exceed, so that loading a large batch doesn't
+     *                         flood the cluster. Zero, the default, sends as fast as the concurrency allows.
+     */
+    public void setTargetThroughput(double targetThroughput) {
+        this.targetThroughput = targetThroughput;
+    }
+}
@@ -0,0 +1,52 @@
+package me.itzg.etcd;
+
+import java.io.File;
+
+/**
+ * Configures the bounds of an {@link EtcdCache}.
+ *
+ * @author Geoff Bourne
+ * @since 7/1/2015
+ */
+public class CacheSettings {
+    private int maxEntries = 10000;
+    private long expireAfterWrite;
+    private File snapshotFile;
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param maxEntries the number of keys to retain, beyond which the least recently read are evicted
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    /**
+     * @param expireAfterWrite in milliseconds after which a cached key is re-read even though the watch
+     *                         reported no change. Zero, the default, relies on the watch alone.
+     */
+    public void setExpireAfterWrite(long expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * @param snapshotFile where the cached keys and the etcd index they reflect are saved after each full load
+     *                     and when the cache is closed. When it exists at start, the cache is restored from it and
+     *                     the watch catches up from the saved index, so no recursive read is needed and etcd
+     *                     doesn't have to be reachable. Null, the default, saves nothing.
+     */
+    public void setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+}
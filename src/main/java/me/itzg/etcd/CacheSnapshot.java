@@ -0,0 +1,186 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The keys of an {@link EtcdCache} as of an etcd index, as saved to and restored from
+ * {@link CacheSettings#getSnapshotFile()}.
+ * <p>
+ * The file is a length-prefixed binary layout that is memory-mapped when read, so restoring a large subtree
+ * costs little more than decoding its strings. It is written to a temporary file and then moved into place, so
+ * a reader never sees a partial snapshot.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/19/2015
+ */
+class CacheSnapshot {
+    private static final int MAGIC = 0x65746364;
+    private static final int VERSION = 1;
+    private static final int ABSENT = -1;
+    /**
+     * The bytes taken by a node whose key and value are empty
+     */
+    private static final int MIN_NODE_SIZE = 4 + 4 + 8 + 8 + 4 + 8;
+
+    private final String prefixKey;
+    private final long index;
+    private final boolean complete;
+    private final Collection<Node> nodes;
+
+    /**
+     * @param index    the etcd index that the nodes reflect every change up to
+     * @param complete true if the nodes are every key beneath the prefix
+     */
+    CacheSnapshot(String prefixKey, long index, boolean complete, Collection<Node> nodes) {
+        this.prefixKey = prefixKey;
+        this.index = index;
+        this.complete = complete;
+        this.nodes = nodes;
+    }
+
+    String getPrefixKey() {
+        return prefixKey;
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    Collection<Node> getNodes() {
+        return nodes;
+    }
+
+    void write(File file) throws IOException {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        final File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, prefixKey);
+                out.writeLong(index);
+                out.writeBoolean(complete);
+                out.writeInt(nodes.size());
+                for (Node node : nodes) {
+                    writeString(out, node.getKey());
+                    writeString(out, node.getValue());
+                    out.writeLong(node.getCreatedIndex());
+                    out.writeLong(node.getModifiedIndex());
+                    out.writeInt(node.getTtl());
+                    out.writeLong(node.getExpiration() != null ? node.getExpiration().getTime() : ABSENT);
+                }
+            }
+
+            try {
+                Files.move(temp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * @return the snapshot saved in the file or null if there is none
+     * @throws IOException if the file can't be read, is corrupt or isn't a snapshot of the given prefix
+     */
+    static CacheSnapshot read(File file, String prefixKey) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            final FileChannel channel = in.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(file + " is not an etcd cache snapshot");
+            }
+            final String savedPrefix = readString(buffer);
+            if (!prefixKey.equals(savedPrefix)) {
+                throw new IOException(file + " is a snapshot of " + savedPrefix + " rather than " + prefixKey);
+            }
+            final long index = buffer.getLong();
+            final boolean complete = buffer.get() != 0;
+
+            final int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / MIN_NODE_SIZE) {
+                throw new IOException(file + " claims " + count + " keys in its remaining "
+                        + buffer.remaining() + " bytes");
+            }
+            final List<Node> nodes = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                final Node node = new Node();
+                node.setKey(readString(buffer));
+                node.setValue(readString(buffer));
+                node.setCreatedIndex(buffer.getLong());
+                node.setModifiedIndex(buffer.getLong());
+                node.setTtl(buffer.getInt());
+                final long expiration = buffer.getLong();
+                if (expiration != ABSENT) {
+                    node.setExpiration(new Date(expiration));
+                }
+                nodes.add(node);
+            }
+            return new CacheSnapshot(prefixKey, index, complete, nodes);
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        } catch (RuntimeException e) {
+            // such as a file too large to map
+            throw new IOException("Unable to read " + file, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(ABSENT);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length == ABSENT) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -9,10 +9,10 @@ import me.itzg.etcd.keys.Response;
 public class ClientEtcdException extends EtcdException {
     private final String cause;
     private final int errorCode;
-    private final int index;
+    private final long index;
 
-    protected ClientEtcdException(String message, String cause, int errorCode, int index) {
-        super(message);
+    protected ClientEtcdException(String message, String cause, int errorCode, long index) {
+        super(message, EtcdError.resolve(errorCode));
         this.cause = cause;
         this.errorCode = errorCode;
         this.index = index;
@@ -30,7 +30,7 @@ public class ClientEtcdException extends EtcdException {
         return errorCode;
     }
 
-    public int getIndex() {
+    public long getIndex() {
         return index;
     }
 }
@@ -0,0 +1,57 @@
+package me.itzg.etcd;
+
+/**
+ * Configures the retries of {@link EtcdService#compute(ComputeSettings, NodeUpdater, String...)}.
+ * After each conflict the compute waits a random time between zero and a ceiling that doubles with each
+ * attempt, so that contending writers spread out rather than retrying in lock step.
+ *
+ * @author Geoff Bourne
+ * @since 7/10/2015
+ */
+public class ComputeSettings {
+    private int maxAttempts = 10;
+    private long initialBackoff = 10;
+    private long maxBackoff = 1000;
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts the number of read-update-swap attempts before giving up
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * @param initialBackoff in milliseconds, the ceiling of the wait after the first conflict
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * @param maxBackoff in milliseconds, beyond which the ceiling stops doubling
+     */
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @param conflicts the number of conflicts so far, at least one
+     * @return the ceiling in milliseconds of the wait before the next attempt
+     */
+    long backoffCeiling(int conflicts) {
+        final int doublings = Math.min(conflicts - 1, 30);
+        return Math.min(maxBackoff, initialBackoff << doublings);
+    }
+}
@@ -0,0 +1,142 @@
+package me.itzg.etcd;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers items to a subscriber no faster than it requests them. Subclasses are asked to
+ * {@link #fetch() fetch} only while the subscriber has outstanding demand and nothing is ready for it, so a
+ * slow subscriber holds back the requests to etcd rather than letting items pile up.
+ * <p>
+ * Signals to the subscriber are serialized by a drain loop, which whichever thread requests, cancels or
+ * provides items runs without blocking.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/16/2015
+ */
+abstract class DemandSubscription<T> implements Subscription {
+    private final Subscriber<? super T> subscriber;
+    private final Queue<T> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger drains = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile boolean completed;
+    private volatile Throwable error;
+    /**
+     * Only touched within the drain loop
+     */
+    private boolean terminated;
+
+    DemandSubscription(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        this.subscriber = subscriber;
+    }
+
+    void start() {
+        subscriber.onSubscribe(this);
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            ready.clear();
+            fail(new IllegalArgumentException("Requested a non-positive number of items: " + n));
+            return;
+        }
+        long current;
+        long updated;
+        do {
+            current = requested.get();
+            updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!requested.compareAndSet(current, updated));
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        ready.clear();
+        onCancel();
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Starts retrieving more items, unless a retrieval is already under way. Called only while the subscriber
+     * has unmet demand, with the retrieval reporting back via {@link #emit(Object)}, {@link #complete()},
+     * {@link #fail(Throwable)} or, if it found nothing yet, {@link #drain()}.
+     */
+    protected abstract void fetch();
+
+    /**
+     * Abandons any retrieval under way.
+     */
+    protected void onCancel() {
+    }
+
+    protected void emit(T item) {
+        ready.add(item);
+        drain();
+    }
+
+    /**
+     * Completes the subscription once the items already emitted have been delivered.
+     */
+    protected void complete() {
+        completed = true;
+        drain();
+    }
+
+    /**
+     * Fails the subscription once the items already emitted have been delivered.
+     */
+    protected void fail(Throwable e) {
+        error = e;
+        drain();
+    }
+
+    protected void drain() {
+        if (drains.getAndIncrement() != 0) {
+            // the thread already draining will loop again
+            return;
+        }
+        int missed = 1;
+        do {
+            while (!cancelled && !terminated) {
+                if (requested.get() > 0) {
+                    final T item = ready.poll();
+                    if (item != null) {
+                        if (requested.get() != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                        subscriber.onNext(item);
+                        continue;
+                    }
+                }
+                if (ready.isEmpty()) {
+                    if (error != null) {
+                        terminated = true;
+                        subscriber.onError(error);
+                    } else if (completed) {
+                        terminated = true;
+                        subscriber.onComplete();
+                    } else if (requested.get() > 0) {
+                        fetch();
+                    }
+                }
+                break;
+            }
+            missed = drains.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
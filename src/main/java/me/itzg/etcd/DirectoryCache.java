@@ -0,0 +1,99 @@
+package me.itzg.etcd;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The directories known to exist, so that {@link EtcdService#ensureDir(String...)} doesn't need to ask etcd
+ * again. Once full, arbitrary entries are evicted to make room, which at worst costs a redundant request.
+ *
+ * @author Geoff Bourne
+ * @since 7/13/2015
+ */
+class DirectoryCache {
+    private final Set<String> known = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile int maxSize;
+
+    DirectoryCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    /**
+     * @param key the full key of the directory, such as <code>"/a/b"</code>
+     */
+    boolean contains(String key) {
+        return known.contains(normalize(key));
+    }
+
+    /**
+     * Notes the directory along with each of its ancestors, which etcd created along with it.
+     */
+    void addWithAncestors(String key) {
+        if (maxSize <= 0) {
+            return;
+        }
+        key = normalize(key);
+        known.add(key);
+        for (int pos = key.indexOf('/', 1); pos > 0; pos = key.indexOf('/', pos + 1)) {
+            known.add(key.substring(0, pos));
+        }
+        trim();
+    }
+
+    /**
+     * Forgets the given key and everything beneath it, such as after it was deleted.
+     */
+    void forget(String key) {
+        if (known.isEmpty()) {
+            return;
+        }
+        key = normalize(key);
+        final String prefix = key.endsWith(EtcdService.SEP) ? key : key + EtcdService.SEP;
+        for (Iterator<String> it = known.iterator(); it.hasNext(); ) {
+            final String dir = it.next();
+            if (dir.equals(key) || dir.startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    int size() {
+        return known.size();
+    }
+
+    /**
+     * @return the key without repeated or trailing separators, so that each directory has one entry
+     */
+    static String normalize(String key) {
+        final StringBuilder sb = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); ++i) {
+            final char c = key.charAt(i);
+            if (c != '/' || sb.length() == 0 || sb.charAt(sb.length() - 1) != '/') {
+                sb.append(c);
+            }
+        }
+        if (sb.length() > 1 && sb.charAt(sb.length() - 1) == '/') {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    private void trim() {
+        final int excess = known.size() - maxSize;
+        if (excess <= 0) {
+            return;
+        }
+        final Iterator<String> it = known.iterator();
+        for (int i = 0; i < excess && it.hasNext(); ++i) {
+            it.next();
+            it.remove();
+        }
+    }
+}
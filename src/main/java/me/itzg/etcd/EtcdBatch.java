@@ -0,0 +1,135 @@
+package me.itzg.etcd;
+
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects many writes to be sent together by {@link EtcdService#execute(EtcdBatch, BatchSettings)}.
+ * The operations are independent, so they may be applied in any order and the failure of one
+ * doesn't affect the others.
+ *
+ * @author Geoff Bourne
+ * @since 7/7/2015
+ */
+public class EtcdBatch {
+    private final List<Operation> operations = new ArrayList<>();
+
+    public EtcdBatch put(String value, String... path) {
+        return put(value, 0, path);
+    }
+
+    /**
+     * @param ttl in seconds after which etcd expires the key or, if zero, the key never expires
+     */
+    public EtcdBatch put(String value, int ttl, String... path) {
+        return add(EtcdOperation.PUT, HttpMethod.PUT, toKey(path), new String[0],
+                "value", value,
+                EtcdService.ttlParam(ttl), String.valueOf(ttl));
+    }
+
+    public EtcdBatch putIfNotExists(String value, String... path) {
+        return putIfNotExists(value, 0, path);
+    }
+
+    /**
+     * @param ttl in seconds after which etcd expires the key or, if zero, the key never expires
+     */
+    public EtcdBatch putIfNotExists(String value, int ttl, String... path) {
+        return add(EtcdOperation.PUT_IF_NOT_EXISTS, HttpMethod.PUT, toKey(path), new String[0],
+                "prevExist", "false",
+                "value", value,
+                EtcdService.ttlParam(ttl), String.valueOf(ttl));
+    }
+
+    /**
+     * @param prevIndex the existing <code>modifiedIndex</code> of the node to update
+     * @param key       the path to the key to update
+     */
+    public EtcdBatch updateKeyAtomically(String newValue, long prevIndex, String key) {
+        return updateKeyAtomically(newValue, prevIndex, 0, key);
+    }
+
+    /**
+     * @param prevIndex the existing <code>modifiedIndex</code> of the node to update
+     * @param ttl       in seconds after which etcd expires the updated key or, if zero, the key no longer expires
+     * @param key       the path to the key to update
+     */
+    public EtcdBatch updateKeyAtomically(String newValue, long prevIndex, int ttl, String key) {
+        return add(EtcdOperation.UPDATE_KEY_ATOMICALLY, HttpMethod.PUT, toKey(key), new String[0],
+                "value", newValue,
+                "prevIndex", String.valueOf(prevIndex),
+                EtcdService.ttlParam(ttl), String.valueOf(ttl));
+    }
+
+    public EtcdBatch updateKeyAtomically(String newValue, String previousValue, String... path) {
+        return updateKeyAtomically(newValue, previousValue, 0, path);
+    }
+
+    /**
+     * @param ttl in seconds after which etcd expires the updated key or, if zero, the key no longer expires
+     */
+    public EtcdBatch updateKeyAtomically(String newValue, String previousValue, int ttl, String... path) {
+        return add(EtcdOperation.UPDATE_KEY_ATOMICALLY, HttpMethod.PUT, toKey(path), new String[0],
+                "prevValue", previousValue,
+                "value", newValue,
+                EtcdService.ttlParam(ttl), String.valueOf(ttl));
+    }
+
+    /**
+     * @param ttl in seconds from now after which etcd expires the key
+     * @see EtcdService#refresh(int, String...)
+     */
+    public EtcdBatch refresh(int ttl, String... path) {
+        return add(EtcdOperation.REFRESH, HttpMethod.PUT, toKey(path), new String[0],
+                "refresh", "true",
+                "prevExist", "true",
+                "ttl", String.valueOf(ttl));
+    }
+
+    public EtcdBatch delete(String... path) {
+        return add(EtcdOperation.DELETE, HttpMethod.DELETE, toKey(path), new String[0]);
+    }
+
+    public EtcdBatch deleteKeyAtomically(String key, long prevIndex) {
+        return add(EtcdOperation.DELETE_KEY_ATOMICALLY, HttpMethod.DELETE, toKey(key),
+                new String[]{"prevIndex", String.valueOf(prevIndex)});
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    private EtcdBatch add(EtcdOperation operation, HttpMethod method, String key, String[] query,
+                          String... params) {
+        operations.add(new Operation(operation, method, key, query, params));
+        return this;
+    }
+
+    static String toKey(String... path) {
+        final String joined = EtcdUtils.join(path);
+        return joined.startsWith(EtcdService.SEP) ? joined : EtcdService.SEP + joined;
+    }
+
+    static class Operation {
+        final EtcdOperation operation;
+        final HttpMethod method;
+        final String key;
+        final String[] query;
+        final String[] params;
+
+        Operation(EtcdOperation operation, HttpMethod method, String key, String[] query, String[] params) {
+            this.operation = operation;
+            this.method = method;
+            this.key = key;
+            this.query = query;
+            this.params = params;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local, read-through view of the keys beneath a prefix. The subtree is loaded with one recursive read and
+ * then kept current by an {@link EtcdWatch} of the same prefix, so most reads are answered without a request.
+ * <p>
+ * Cached nodes retain their <code>modifiedIndex</code>, so they can be used directly with
+ * {@link EtcdService#updateKeyAtomically(String, long, String)} or {@link #updateKeyAtomically(String, Node)}.
+ * The returned nodes are shared and must not be modified.
+ * </p>
+ * <p>
+ * With a {@link CacheSettings#setSnapshotFile(File) snapshot file}, the cached keys are saved along with the
+ * etcd index they reflect, and a later start restores them and resumes the watch from that index. Only the
+ * changes since are then read, and the cache starts even while etcd is unreachable.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/1/2015
+ */
+public class EtcdCache implements WatchListener, Closeable {
+    private static Logger LOG = LoggerFactory.getLogger(EtcdCache.class);
+
+    private final EtcdService etcdService;
+    private final CacheSettings settings;
+    private final String prefixKey;
+    private final EtcdWatch watch;
+    private final LinkedHashMap<String, CachedNode> entries;
+    /**
+     * The index at which each recently removed key was deleted, so that a read-through that was answered
+     * before the deletion can't bring the key back. Guarded by {@link #entries}.
+     */
+    private final LinkedHashMap<String, Long> tombstones;
+
+    /**
+     * True while every key beneath the prefix is cached, which means an absent key doesn't exist
+     */
+    private boolean complete;
+    /**
+     * The etcd index that the entries reflect every change up to, or zero if not yet known
+     */
+    private long appliedIndex;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public EtcdCache(EtcdService etcdService, CacheSettings settings, String... prefix) {
+        this.etcdService = etcdService;
+        this.settings = settings;
+        this.prefixKey = toKey(prefix);
+        this.watch = etcdService.watch(prefix);
+        this.entries = new LinkedHashMap<String, CachedNode>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedNode> eldest) {
+                if (size() > EtcdCache.this.settings.getMaxEntries()) {
+                    evictions.incrementAndGet();
+                    complete = false;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.tombstones = new LinkedHashMap<String, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > EtcdCache.this.settings.getMaxEntries();
+            }
+        };
+        watch.addListener(this);
+    }
+
+    /**
+     * Loads the subtree, from the snapshot file if there is one, and starts watching it for changes.
+     */
+    public void start() throws IOException, EtcdException {
+        if (restore()) {
+            return;
+        }
+
+        // a missing prefix still reports the index as of the read, so keys created since aren't missed
+        final Response snapshot = etcdService.getResponseOrMissing(true, prefixKey);
+        load(snapshot);
+        watch.start(snapshot.getIndex() + 1);
+        save();
+    }
+
+    /**
+     * Stops watching and, if configured, saves the cached keys to the snapshot file.
+     */
+    @Override
+    public void close() {
+        watch.close();
+        save();
+    }
+
+    /**
+     * @param path the path of the key to get, which is read from etcd if it isn't beneath this cache's prefix
+     * @return the cached or retrieved node or null if it doesn't exist
+     */
+    public Node get(String... path) throws IOException, EtcdException {
+        final String key = toKey(path);
+        if (!isCovered(key)) {
+            misses.incrementAndGet();
+            return etcdService.get(key);
+        }
+
+        synchronized (entries) {
+            final CachedNode cached = entries.get(key);
+            if (cached != null) {
+                if (settings.getExpireAfterWrite() <= 0
+                        || System.currentTimeMillis() - cached.writtenAt < settings.getExpireAfterWrite()) {
+                    hits.incrementAndGet();
+                    return cached.node;
+                }
+                stale.incrementAndGet();
+            } else if (complete) {
+                hits.incrementAndGet();
+                return null;
+            }
+        }
+
+        misses.incrementAndGet();
+        final Node node = etcdService.get(key);
+        if (node != null && !node.isDir()) {
+            store(node);
+        }
+        return node;
+    }
+
+    /**
+     * Performs a compare-and-swap against the cached node's <code>modifiedIndex</code>. When another
+     * writer got there first, the cached entry is dropped so that the next {@link #get(String...)} reads
+     * the current value.
+     *
+     * @param newValue the value to set
+     * @param cached   a node previously returned by this cache
+     * @return true if the update was successful
+     */
+    public boolean updateKeyAtomically(String newValue, Node cached) throws IOException, EtcdException {
+        final boolean updated = etcdService.updateKeyAtomically(newValue, cached.getModifiedIndex(), cached.getKey());
+        if (!updated) {
+            synchronized (entries) {
+                entries.remove(cached.getKey());
+                complete = false;
+            }
+        }
+        return updated;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of reads that found a cached entry older than {@link CacheSettings#getExpireAfterWrite()}
+     */
+    public long getStaleCount() {
+        return stale.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public void onEvent(Response event) {
+        final Node node = event.getNode();
+        if (node == null) {
+            return;
+        }
+
+        final String action = event.getAction();
+        if (action.equals("delete") || action.equals("compareAndDelete") || action.equals("expire")) {
+            remove(node.getKey(), node.getModifiedIndex());
+        } else if (!node.isDir()) {
+            store(node);
+        }
+        synchronized (entries) {
+            appliedIndex = Math.max(appliedIndex, node.getModifiedIndex());
+        }
+    }
+
+    @Override
+    public void onResync(Response snapshot) {
+        LOG.debug("Reloading cache of {}", prefixKey);
+        if (snapshot != null) {
+            load(snapshot);
+        } else {
+            synchronized (entries) {
+                entries.clear();
+                complete = true;
+                appliedIndex = watch.getWaitIndex() - 1;
+            }
+        }
+        save();
+    }
+
+    /**
+     * @param snapshot the recursive read of the prefix or etcd's error if it is missing
+     */
+    private void load(Response snapshot) {
+        synchronized (entries) {
+            entries.clear();
+            complete = true;
+            appliedIndex = snapshot.getIndex();
+            if (!EtcdService.isMissing(snapshot)) {
+                collect(snapshot.getNode(), System.currentTimeMillis());
+            }
+        }
+    }
+
+    /**
+     * @return true if the entries were restored from the snapshot file and the watch started from its index
+     */
+    private boolean restore() {
+        final File file = settings.getSnapshotFile();
+        if (file == null) {
+            return false;
+        }
+
+        final CacheSnapshot saved;
+        try {
+            saved = CacheSnapshot.read(file, prefixKey);
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable snapshot of {} in {}", prefixKey, file, e);
+            return false;
+        }
+        if (saved == null) {
+            return false;
+        }
+
+        final long restoredAt = System.currentTimeMillis();
+        synchronized (entries) {
+            entries.clear();
+            complete = true;
+            for (Node node : saved.getNodes()) {
+                entries.put(node.getKey(), new CachedNode(node, restoredAt));
+            }
+            // evicting while restoring already cleared complete
+            complete &= saved.isComplete();
+            appliedIndex = saved.getIndex();
+        }
+        LOG.debug("Restored {} keys of {} as of index {}", saved.getNodes().size(), prefixKey, saved.getIndex());
+        watch.start(saved.getIndex() + 1);
+        return true;
+    }
+
+    private void save() {
+        final File file = settings.getSnapshotFile();
+        if (file == null) {
+            return;
+        }
+
+        final CacheSnapshot snapshot;
+        synchronized (entries) {
+            if (appliedIndex == 0) {
+                return;
+            }
+            final List<Node> nodes = new ArrayList<>(entries.size());
+            for (CachedNode cached : entries.values()) {
+                nodes.add(cached.node);
+            }
+            snapshot = new CacheSnapshot(prefixKey, appliedIndex, complete, nodes);
+        }
+
+        try {
+            snapshot.write(file);
+        } catch (IOException e) {
+            LOG.warn("Failed to save snapshot of {} to {}", prefixKey, file, e);
+        }
+    }
+
+    private void collect(Node node, long writtenAt) {
+        if (!node.isDir()) {
+            entries.put(node.getKey(), new CachedNode(node, writtenAt));
+            return;
+        }
+        final List<Node> children = node.getNodes();
+        if (children != null) {
+            for (Node child : children) {
+                collect(child, writtenAt);
+            }
+        }
+    }
+
+    private void store(Node node) {
+        synchronized (entries) {
+            final CachedNode existing = entries.get(node.getKey());
+            // a read-through may race with a newer change or a deletion delivered by the watch
+            if (existing != null ? existing.node.getModifiedIndex() <= node.getModifiedIndex()
+                    : !isDeletedSince(node)) {
+                entries.put(node.getKey(), new CachedNode(node, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    /**
+     * @return true if the node, or a directory above it, was deleted after the node was last modified
+     */
+    private boolean isDeletedSince(Node node) {
+        String key = node.getKey();
+        while (isCovered(key) || key.equals(prefixKey)) {
+            final Long deletedAt = tombstones.get(key);
+            if (deletedAt != null && deletedAt >= node.getModifiedIndex()) {
+                return true;
+            }
+            final int slash = key.lastIndexOf('/');
+            if (slash <= 0) {
+                break;
+            }
+            key = key.substring(0, slash);
+        }
+        return false;
+    }
+
+    private void remove(String key, long deletedAt) {
+        final String childPrefix = key + EtcdService.SEP;
+        synchronized (entries) {
+            tombstones.put(key, deletedAt);
+            entries.remove(key);
+            final Iterator<String> it = entries.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(childPrefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private boolean isCovered(String key) {
+        return prefixKey.equals(EtcdService.SEP) || key.startsWith(prefixKey + EtcdService.SEP);
+    }
+
+    static String toKey(String[] path) {
+        final String joined = EtcdUtils.join(path);
+        final StringBuilder sb = new StringBuilder(joined.length() + 1);
+        for (int i = 0; i < joined.length(); ++i) {
+            final char c = joined.charAt(i);
+            // collapse repeated and trailing separators
+            if (c != '/' || (i + 1 < joined.length() && joined.charAt(i + 1) != '/')) {
+                if (c != '/' && sb.length() == 0) {
+                    sb.append('/');
+                }
+                sb.append(c);
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : EtcdService.SEP;
+    }
+
+    private static class CachedNode {
+        final Node node;
+        final long writtenAt;
+
+        CachedNode(Node node, long writtenAt) {
+            this.node = node;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A mutual exclusion lock held across processes by way of etcd. Created by
+ * {@link EtcdService#createLock(String, int, String...)}.
+ * <p>
+ * Each contender creates an {@link EtcdService#createInOrder(String, int, String...) in-order} key with a TTL
+ * beneath the lock's directory and the contender with the lowest key holds the lock. The others each wait on
+ * the key just ahead of their own, so a release wakes only the next contender rather than every one of them.
+ * While a contender waits or holds the lock, its key is refreshed on the service's shared heartbeat thread, so
+ * the key of a crashed holder expires within the TTL and the lock passes on without manual cleanup.
+ * </p>
+ * <p>
+ * No monitor is held across a request to etcd, so contenders may run on virtual threads without pinning
+ * their carriers.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/11/2015
+ */
+public class EtcdLock {
+    private static Logger LOG = LoggerFactory.getLogger(EtcdLock.class);
+
+    private static final Comparator<Node> BY_CREATED_INDEX = new Comparator<Node>() {
+        @Override
+        public int compare(Node o1, Node o2) {
+            return Long.compare(o1.getCreatedIndex(), o2.getCreatedIndex());
+        }
+    };
+
+    private final EtcdService etcdService;
+    private final String owner;
+    private final int ttl;
+    private final String[] path;
+    /**
+     * Set from the start of an acquisition until the lock is released or the acquisition abandoned
+     */
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private volatile String ownKey;
+    private volatile boolean held;
+    private volatile Runnable lostListener;
+    private ScheduledFuture<?> heartbeat;
+
+    EtcdLock(EtcdService etcdService, String owner, int ttl, String... path) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("A lock requires a positive TTL");
+        }
+        this.etcdService = etcdService;
+        this.owner = owner;
+        this.ttl = ttl;
+        this.path = path.clone();
+    }
+
+    /**
+     * Waits until this contender holds the lock.
+     *
+     * @throws IllegalStateException if this lock is already held or being acquired
+     * @throws EtcdException         with {@link EtcdError#EcodeKeyNotFound} if this contender's key expired while
+     *                               waiting, such as when the heartbeats couldn't reach etcd
+     */
+    public void lock() throws IOException, EtcdException {
+        acquire(true);
+    }
+
+    /**
+     * Takes the lock only if no other contender is ahead of this one.
+     *
+     * @return true if the lock is now held
+     */
+    public boolean tryLock() throws IOException, EtcdException {
+        return acquire(false);
+    }
+
+    /**
+     * Releases the lock, or abandons an acquisition, by deleting this contender's key. Does nothing if this
+     * contender has no key.
+     */
+    public void unlock() throws IOException, EtcdException {
+        final String key;
+        synchronized (this) {
+            key = ownKey;
+            ownKey = null;
+            held = false;
+            stopHeartbeat();
+        }
+        if (key == null) {
+            return;
+        }
+        claimed.set(false);
+        try {
+            etcdService.deleteKey(key);
+        } catch (EtcdException e) {
+            if (e.getEtcdError() != EtcdError.EcodeKeyNotFound) {
+                throw e;
+            }
+            // already expired, which releases the lock just the same
+        }
+    }
+
+    /**
+     * @return true if this contender holds the lock, as far as the last heartbeat could tell
+     */
+    public boolean isHeld() {
+        return held;
+    }
+
+    /**
+     * @return the owner given by the contender currently holding the lock or null if nobody holds it
+     */
+    public String getHolder() throws IOException, EtcdException {
+        final List<Node> contenders = listContenders(etcdService.getResponse(false, path));
+        return contenders.isEmpty() ? null : contenders.get(0).getValue();
+    }
+
+    /**
+     * @param lostListener called on the heartbeat thread if this contender's key is found to have expired
+     *                     while holding, or waiting for, the lock
+     */
+    public void setLostListener(Runnable lostListener) {
+        this.lostListener = lostListener;
+    }
+
+    private boolean acquire(boolean wait) throws IOException, EtcdException {
+        if (!claimed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Lock is already held or being acquired");
+        }
+        Node created = null;
+        try {
+            created = etcdService.createInOrder(owner, ttl, path);
+        } finally {
+            if (created == null) {
+                claimed.set(false);
+            }
+        }
+        synchronized (this) {
+            ownKey = created.getKey();
+            startHeartbeat();
+        }
+
+        boolean acquired = false;
+        Throwable failure = null;
+        try {
+            while (true) {
+                final Response listing = etcdService.getResponse(false, path);
+                final String key = ownKey;
+                Node predecessor = null;
+                boolean found = false;
+                for (Node contender : listContenders(listing)) {
+                    if (contender.getKey().equals(key)) {
+                        found = true;
+                        break;
+                    }
+                    predecessor = contender;
+                }
+
+                if (!found) {
+                    throw new EtcdException(created.getKey(), EtcdError.EcodeKeyNotFound);
+                }
+                if (predecessor == null) {
+                    held = true;
+                    acquired = true;
+                    return true;
+                }
+                if (!wait) {
+                    return false;
+                }
+                awaitRemoval(predecessor.getKey(), listing.getIndex() + 1);
+            }
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (!acquired) {
+                try {
+                    unlock();
+                } catch (IOException | EtcdException | RuntimeException e) {
+                    if (failure == null) {
+                        throw e;
+                    }
+                    // the failure that prevented acquiring matters more than the failure to clean up after it
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Long-polls the given key until it is deleted or expires, starting from the index of the listing that
+     * found it so that a removal in between isn't missed.
+     */
+    private void awaitRemoval(String key, long waitIndex) throws IOException, EtcdException {
+        while (true) {
+            final Response event;
+            try {
+                event = etcdService.waitForChange(waitIndex, false, key);
+            } catch (ClientEtcdException e) {
+                if (e.getEtcdError() == EtcdError.EcodeEventIndexCleared) {
+                    // the listing is re-read, which is as good as the missed events
+                    return;
+                }
+                throw e;
+            }
+            if (event == null) {
+                // read timeout, so check again that this contender is still waiting behind that key
+                return;
+            }
+            final String action = event.getAction();
+            if ("delete".equals(action) || "expire".equals(action) || "compareAndDelete".equals(action)) {
+                return;
+            }
+            waitIndex = event.getNode().getModifiedIndex() + 1;
+        }
+    }
+
+    private static List<Node> listContenders(Response listing) {
+        if (listing == null || listing.getNode().getNodes() == null) {
+            return Collections.emptyList();
+        }
+        final List<Node> contenders = new ArrayList<>(listing.getNode().getNodes());
+        Collections.sort(contenders, BY_CREATED_INDEX);
+        return contenders;
+    }
+
+    private void startHeartbeat() {
+        final String key = ownKey;
+        final long period = Math.max(TimeUnit.SECONDS.toMillis(ttl) / 3, 1);
+        heartbeat = etcdService.getScheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh(key);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+    }
+
+    private void refresh(String key) {
+        try {
+            if (etcdService.refresh(ttl, key)) {
+                return;
+            }
+        } catch (Exception e) {
+            // the key stays alive until its TTL runs out, so keep trying
+            LOG.warn("Failed to refresh lock key {}", key, e);
+            return;
+        }
+
+        LOG.warn("Lock key {} expired", key);
+        synchronized (this) {
+            if (!key.equals(ownKey)) {
+                return;
+            }
+            held = false;
+            stopHeartbeat();
+        }
+        final Runnable listener = lostListener;
+        if (listener != null) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOG.warn("Lost listener of lock failed", e);
+            }
+        }
+    }
+}
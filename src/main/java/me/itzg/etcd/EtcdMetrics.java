@@ -0,0 +1,67 @@
+package me.itzg.etcd;
+
+import java.net.URI;
+
+/**
+ * Receives the timing and outcome of every etcd operation from {@link EtcdService} and {@link AsyncEtcdService}.
+ * Implementations are called concurrently from the request path, so they must be thread-safe and cheap.
+ * <p>
+ * The default is {@link #NOOP}, in which case the services skip even taking the time of each operation.
+ * {@link SimpleEtcdMetrics} keeps the counts in memory and can also serve as the basis for bridging to
+ * a metrics library.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/6/2015
+ */
+public interface EtcdMetrics {
+    EtcdMetrics NOOP = new EtcdMetrics() {
+        @Override
+        public void operationStarted(EtcdOperation operation) {
+        }
+
+        @Override
+        public void operationCompleted(EtcdOperation operation, long elapsedNanos, boolean succeeded) {
+        }
+
+        @Override
+        public void conditionCompleted(EtcdOperation operation, boolean applied) {
+        }
+
+        @Override
+        public void machineError(URI machine, Throwable cause) {
+        }
+
+        @Override
+        public void failover(URI machine) {
+        }
+    };
+
+    void operationStarted(EtcdOperation operation);
+
+    /**
+     * @param elapsedNanos the time taken by the operation including any failover to other machines
+     * @param succeeded    false if the operation failed with an exception
+     */
+    void operationCompleted(EtcdOperation operation, long elapsedNanos, boolean succeeded);
+
+    /**
+     * Reports the outcome of a {@link EtcdOperation#isConditional() conditional} operation, such as a
+     * compare-and-swap.
+     *
+     * @param applied true if the precondition held and the change was made, false on a conflict
+     */
+    void conditionCompleted(EtcdOperation operation, boolean applied);
+
+    /**
+     * @param machine the machine that could not be reached or responded with a server error
+     */
+    void machineError(URI machine, Throwable cause);
+
+    /**
+     * Reported once per rotation of the machine that writes stick to, rather than for every failed request.
+     *
+     * @param machine the unreachable machine that requests are failing over from
+     */
+    void failover(URI machine);
+}
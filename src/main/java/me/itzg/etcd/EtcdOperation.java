@@ -0,0 +1,63 @@
+package me.itzg.etcd;
+
+/**
+ * The operations reported to {@link EtcdMetrics}.
+ *
+ * @author Geoff Bourne
+ * @since 7/6/2015
+ */
+public enum EtcdOperation {
+    GET,
+    GET_RESPONSE,
+    WAIT_FOR_CHANGE(false, true),
+    BULK_GET,
+    BULK_LOAD,
+    STREAM_LEAVES,
+    LOAD_TREE,
+    PUT,
+    PUT_IF_NOT_EXISTS(true),
+    CREATE_DIR_IF_NOT_EXISTS(true),
+    REFRESH,
+    CREATE_IN_ORDER,
+    ENSURE_DIR,
+    DELETE,
+    UPDATE_KEY_ATOMICALLY(true),
+    DELETE_KEY,
+    DELETE_KEY_ATOMICALLY(true),
+    COMPUTE(true),
+    /**
+     * Accesses by subclasses that didn't name their operation
+     */
+    OTHER;
+
+    private final boolean conditional;
+    private final boolean longPoll;
+
+    EtcdOperation() {
+        this(false);
+    }
+
+    EtcdOperation(boolean conditional) {
+        this(conditional, false);
+    }
+
+    EtcdOperation(boolean conditional, boolean longPoll) {
+        this.conditional = conditional;
+        this.longPoll = longPoll;
+    }
+
+    /**
+     * @return true if the operation completes with false, rather than failing, when its precondition isn't met
+     */
+    public boolean isConditional() {
+        return conditional;
+    }
+
+    /**
+     * @return true if the operation is held open by etcd until something changes, so its duration and
+     * outstanding count say nothing about the machine and aren't reported to a {@link MachineSelector}
+     */
+    public boolean isLongPoll() {
+        return longPoll;
+    }
+}
@@ -0,0 +1,151 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.EnumerablePropertySource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offers the keys beneath an etcd prefix as properties of a Spring <code>Environment</code>, named by their
+ * path relative to the prefix with dots in place of slashes, so <code>/config/app/db/url</code> beneath
+ * <code>/config/app</code> is the property <code>db.url</code>.
+ * <p>
+ * The prefix is loaded with a single recursive read into a concurrent map and then kept current by an
+ * {@link EtcdWatch}, which applies each change to the map in place, so a burst of changes costs no more than
+ * the keys it touches. A property lookup never waits on a lock or on etcd. Removing a directory removes its
+ * properties one at a time, so lookups made meanwhile may still see some of them.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/18/2015
+ */
+public class EtcdPropertySource extends EnumerablePropertySource<EtcdService> implements WatchListener, Closeable {
+    private static Logger LOG = LoggerFactory.getLogger(EtcdPropertySource.class);
+
+    private final String prefixKey;
+    private final EtcdWatch watch;
+    /**
+     * Modified only by {@link #start()} and then on the watch's thread, which replaces it on a resync
+     */
+    private volatile Map<String, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * @param name   identifies this source within the environment
+     * @param prefix the directory whose keys become properties
+     */
+    public EtcdPropertySource(String name, EtcdService etcdService, String... prefix) {
+        super(name, etcdService);
+        this.prefixKey = EtcdCache.toKey(prefix);
+        this.watch = etcdService.watch(prefix);
+        watch.addListener(this);
+    }
+
+    /**
+     * Loads the properties and starts watching for changes. This should be called before the source is added
+     * to the environment, so that the properties are available to the first lookups.
+     */
+    public void start() throws IOException, EtcdException {
+        // a missing prefix still reports the index as of the read, so keys created since aren't missed
+        final Response snapshot = getSource().getResponseOrMissing(true, prefixKey);
+        if (!EtcdService.isMissing(snapshot)) {
+            values = load(snapshot);
+        }
+        watch.start(snapshot.getIndex() + 1);
+    }
+
+    @Override
+    public void close() {
+        watch.close();
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return values.get(name);
+    }
+
+    @Override
+    public boolean containsProperty(String name) {
+        return values.containsKey(name);
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return values.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public void onEvent(Response event) {
+        final Node node = event.getNode();
+        if (node == null || !isCovered(node.getKey())) {
+            return;
+        }
+
+        final String action = event.getAction();
+        final boolean removal =
+                action.equals("delete") || action.equals("compareAndDelete") || action.equals("expire");
+        if (!removal && node.isDir()) {
+            return;
+        }
+
+        final Map<String, String> values = this.values;
+        final String name = toPropertyName(node.getKey());
+        if (removal) {
+            values.remove(name);
+            if (node.isDir()) {
+                final String childPrefix = name + ".";
+                for (Iterator<String> it = values.keySet().iterator(); it.hasNext(); ) {
+                    if (it.next().startsWith(childPrefix)) {
+                        it.remove();
+                    }
+                }
+            }
+        } else {
+            values.put(name, node.getValue());
+        }
+    }
+
+    @Override
+    public void onResync(Response snapshot) {
+        LOG.debug("Reloading properties of {}", prefixKey);
+        values = snapshot != null ? load(snapshot) : new ConcurrentHashMap<String, String>();
+    }
+
+    private Map<String, String> load(Response snapshot) {
+        final Map<String, String> values = new ConcurrentHashMap<>();
+        collect(snapshot.getNode(), values);
+        return values;
+    }
+
+    private void collect(Node node, Map<String, String> values) {
+        if (!node.isDir()) {
+            if (isCovered(node.getKey())) {
+                values.put(toPropertyName(node.getKey()), node.getValue());
+            }
+            return;
+        }
+        final List<Node> children = node.getNodes();
+        if (children != null) {
+            for (Node child : children) {
+                collect(child, values);
+            }
+        }
+    }
+
+    private boolean isCovered(String key) {
+        return prefixKey.equals(EtcdService.SEP) || key.startsWith(prefixKey + EtcdService.SEP);
+    }
+
+    private String toPropertyName(String key) {
+        final String relative = prefixKey.equals(EtcdService.SEP) ? key.substring(1)
+                : key.substring(prefixKey.length() + 1);
+        return relative.replace('/', '.');
+    }
+}
@@ -1,96 +1,187 @@
 package me.itzg.etcd;
 
+import me.itzg.etcd.keys.CompactTree;
 import me.itzg.etcd.keys.Node;
 import me.itzg.etcd.keys.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.ConnectException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Geoff Bourne
  * @since 6/17/2015
  */
-public class EtcdService {
+public class EtcdService implements Closeable {
     public static final String SEP = "/";
+    static final String HEADER_ETCD_INDEX = "X-Etcd-Index";
     private static final HttpHeaders HEADERS_FORM_URLENCODED = new HttpHeaders();
     private static Logger LOG = LoggerFactory.getLogger(EtcdService.class);
+    private static final int DEFAULT_DIR_CACHE_SIZE = 1024;
 
     static {
         HEADERS_FORM_URLENCODED.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
     }
 
-    private final int machineCount;
-    private final URI[] machines;
-    private int machinePos;
+    private final Machines machines;
+    private final KeyUris keyUris;
+    private MachineHealthChecker healthChecker;
+    private ScheduledExecutorService scheduler;
+    private final DirectoryCache knownDirs = new DirectoryCache(DEFAULT_DIR_CACHE_SIZE);
+    private final SingleFlight<String, Void> dirsInFlight = new SingleFlight<>();
+    private final SingleFlight<URI, Response> readsInFlight = new SingleFlight<>();
+    private volatile boolean coalesceReads;
+    private volatile EtcdMetrics metrics = EtcdMetrics.NOOP;
 
-    private RestTemplate restTemplate = new RestTemplate();
-    private URI currentMachine;
+    private final EtcdTemplate etcdTemplate;
+    private final ClientHttpRequestFactory ownedRequestFactory;
 
+    /**
+     * Uses the default {@link RestTemplate} transport, which opens a new connection per request.
+     */
     public EtcdService(URI[] machines) {
-        machineCount = machines.length;
-        synchronized (this) {
-            this.machines = machines;
-            machinePos = 0;
-            currentMachine = machines[machinePos];
-        }
+        this(machines, new SimpleClientHttpRequestFactory(), false);
+    }
+
+    /**
+     * Uses a pooled, keep-alive transport configured by the given settings. The connection pool is
+     * released by {@link #close()}.
+     */
+    public EtcdService(URI[] machines, TransportSettings transportSettings) {
+        this(machines, transportSettings.createRequestFactory(), true);
+    }
+
+    /**
+     * Uses the given request factory for all etcd requests. Its lifecycle remains with the caller.
+     */
+    public EtcdService(URI[] machines, ClientHttpRequestFactory requestFactory) {
+        this(machines, requestFactory, false);
+    }
+
+    private EtcdService(URI[] machines, ClientHttpRequestFactory requestFactory, boolean owned) {
+        this.etcdTemplate = new EtcdTemplate(requestFactory);
+        this.ownedRequestFactory = owned ? requestFactory : null;
+        this.machines = new Machines(machines);
+        this.keyUris = new KeyUris(machines);
     }
 
     public void delete(final String... path) throws IOException, EtcdException {
-        access(new Accessor<Void>() {
+        access(EtcdOperation.DELETE, new Accessor<Void>() {
             @Override
-            public Void access(URI uri) throws RestClientException, IOException {
-                final URI builtUri = buildPathUri(uri, path);
+            public Void access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
 
-                restTemplate.delete(builtUri);
+                checkSucceeded(send(HttpMethod.DELETE, builtUri));
+                knownDirs.forget(EtcdBatch.toKey(path));
 
                 return null;
             }
         });
     }
 
+    /**
+     * Creates the directory, and any missing parents, unless it is already known to exist. Directories this
+     * service has created or confirmed are remembered, so repeated calls cost no requests; however, a directory
+     * removed by another client isn't noticed until this service deletes a key at or above it.
+     * Concurrent calls for the same directory share a single request.
+     *
+     * @param parts the path of the directory
+     */
     public void ensureDir(final String... parts) throws IOException, EtcdException {
-        access(new Accessor<Void>() {
+        final String key = DirectoryCache.normalize(EtcdBatch.toKey(parts));
+        if (knownDirs.contains(key)) {
+            return;
+        }
+
+        try {
+            dirsInFlight.execute(key, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    createDirs(parts);
+                    knownDirs.addWithAncestors(key);
+                    return null;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for directory creation");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof EtcdException) {
+                throw (EtcdException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to create directory " + key, cause);
+        }
+    }
+
+    /**
+     * Creates the deepest directory with one request, since etcd creates its missing parents along with it.
+     * Only if etcd refuses that, such as when one of the parents is a key, each level is checked in turn.
+     */
+    private void createDirs(final String... parts) throws IOException, EtcdException {
+        access(EtcdOperation.ENSURE_DIR, new Accessor<Void>() {
             @Override
-            public Void access(URI uri) throws RestClientException, IOException {
-                final UriComponentsBuilder uriComponentsBuilder = createKeysUriBuilder(uri);
+            public Void access(URI uri) throws RestClientException, IOException, EtcdException {
+                final Response created = send(HttpMethod.PUT, keyUris.build(uri, parts),
+                        "dir", "true",
+                        "prevExist", "false");
+                if (created.getErrorCode() == 0 || is(created, EtcdError.EcodeNodeExist)) {
+                    return null;
+                }
+                LOG.debug("Falling back to creating {} level by level since {}", Arrays.toString(parts),
+                        created.getMessage());
 
                 boolean makeTheRest = false;
 
-                for (String part : parts) {
-                    if (!part.startsWith(SEP)) {
-                        part = SEP + part;
-                    }
-                    uriComponentsBuilder.path(part);
-
-                    final URI partUri = uriComponentsBuilder.build().toUri();
+                for (int i = 0; i < parts.length; ++i) {
+                    final URI partUri = keyUris.build(uri, Arrays.copyOf(parts, i + 1));
 
                     if (makeTheRest) {
                         createDir(partUri);
-                    } else {
-                        try {
-                            final ResponseEntity<Response> getResponse = restTemplate.getForEntity(partUri, Response.class);
-                        } catch (HttpClientErrorException e) {
-                            if (e.getStatusCode().equals(HttpStatus.NOT_FOUND)) {
-                                makeTheRest = true;
-                                createDir(partUri);
-                            }
-                        }
+                    } else if (is(send(HttpMethod.GET, partUri), EtcdError.EcodeKeyNotFound)) {
+                        makeTheRest = true;
+                        createDir(partUri);
                     }
 
                 }
@@ -99,14 +190,25 @@ public class EtcdService {
         });
     }
 
-    public void put(final String value, final String... path) throws IOException, EtcdException {
-        access(new Accessor<Void>() {
+    public void put(String value, String... path) throws IOException, EtcdException {
+        put(value, 0, path);
+    }
+
+    /**
+     * @param value the value of the key
+     * @param ttl   in seconds after which etcd expires the key unless it is {@link #refresh(int, String...) refreshed}
+     *              or, if zero, the key never expires
+     * @param path  path to the key to put
+     */
+    public void put(final String value, final int ttl, final String... path) throws IOException, EtcdException {
+        access(EtcdOperation.PUT, new Accessor<Void>() {
             @Override
-            public Void access(URI uri) throws RestClientException, IOException {
-                final URI builtUri = buildPathUri(uri, path);
+            public Void access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
 
-                final ResponseEntity<Response> response = doPut(builtUri,
-                        "value", value);
+                checkSucceeded(send(HttpMethod.PUT, builtUri,
+                        "value", value,
+                        ttlParam(ttl), String.valueOf(ttl)));
 
                 return null;
             }
@@ -118,47 +220,110 @@ public class EtcdService {
      * @param path  path to the key to put
      * @return true if the key did not previously exist
      */
-    public boolean putIfNotExists(final String value, final String... path) throws IOException, EtcdException {
-        return access(new Accessor<Boolean>() {
+    public boolean putIfNotExists(String value, String... path) throws IOException, EtcdException {
+        return putIfNotExists(value, 0, path);
+    }
+
+    /**
+     * @param value the value of the key
+     * @param ttl   in seconds after which etcd expires the key unless it is {@link #refresh(int, String...) refreshed}
+     *              or, if zero, the key never expires
+     * @param path  path to the key to put
+     * @return true if the key did not previously exist
+     */
+    public boolean putIfNotExists(final String value, final int ttl, final String... path)
+            throws IOException, EtcdException {
+        return access(EtcdOperation.PUT_IF_NOT_EXISTS, new Accessor<Boolean>() {
             @Override
-            public Boolean access(URI uri) throws RestClientException, IOException {
-                final URI builtUri = buildPathUri(uri, path);
+            public Boolean access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
 
-                final ResponseEntity<Response> response;
-                try {
-                    doPut(builtUri,
-                            "prevExist", "false",
-                            "value", value);
-                } catch (HttpClientErrorException e) {
-                    if (e.getStatusCode() == HttpStatus.PRECONDITION_FAILED) {
-                        return false;
-                    }
-                    throw e;
-                }
+                final Response response = send(HttpMethod.PUT, builtUri,
+                        "prevExist", "false",
+                        "value", value,
+                        ttlParam(ttl), String.valueOf(ttl));
 
-                return true;
+                return succeededUnlessConflict(response);
             }
         });
     }
 
-    public boolean createDirIfNotExists(final String... path) throws IOException, EtcdException {
-        return access(new Accessor<Boolean>() {
+    /**
+     * Resets the TTL of an existing key without changing its value or notifying watchers, which is how
+     * the holder of an expiring key keeps it alive.
+     *
+     * @param ttl  in seconds from now after which etcd expires the key
+     * @param path path to the key to refresh
+     * @return true if the key was refreshed or false if it no longer exists, such as when it already expired
+     */
+    public boolean refresh(final int ttl, final String... path) throws IOException, EtcdException {
+        return access(EtcdOperation.REFRESH, new Accessor<Boolean>() {
             @Override
-            public Boolean access(URI uri) throws RestClientException, IOException {
-                final URI builtUri = buildPathUri(uri, path);
+            public Boolean access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
 
-                try {
-                    doPut(builtUri,
-                            "prevExist", "false",
-                            "dir", "true");
-
-                    return true;
-                } catch (HttpClientErrorException e) {
-                    if (e.getStatusCode() == HttpStatus.PRECONDITION_FAILED) {
-                        return false;
-                    }
-                    throw e;
+                final Response response = send(HttpMethod.PUT, builtUri,
+                        "refresh", "true",
+                        "prevExist", "true",
+                        "ttl", String.valueOf(ttl));
+
+                if (is(response, EtcdError.EcodeKeyNotFound)) {
+                    return false;
                 }
+                checkSucceeded(response);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Creates a key beneath the given directory whose name etcd assigns from its index, so that keys created
+     * this way sort in the order they were created.
+     *
+     * @param value the value of the new key
+     * @param ttl   in seconds after which etcd expires the key unless it is {@link #refresh(int, String...) refreshed}
+     *              or, if zero, the key never expires
+     * @param path  path to the directory, which is created if needed
+     * @return the created node, whose key includes the assigned name
+     */
+    public Node createInOrder(final String value, final int ttl, final String... path)
+            throws IOException, EtcdException {
+        return access(EtcdOperation.CREATE_IN_ORDER, new Accessor<Node>() {
+            @Override
+            public Node access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
+
+                final Response response = send(HttpMethod.POST, builtUri,
+                        "value", value,
+                        ttlParam(ttl), String.valueOf(ttl));
+                checkSucceeded(response);
+                return response.getNode();
+            }
+        });
+    }
+
+    public boolean createDirIfNotExists(String... path) throws IOException, EtcdException {
+        return createDirIfNotExists(0, path);
+    }
+
+    /**
+     * @param ttl  in seconds after which etcd expires the directory, along with everything in it, unless it is
+     *             {@link #refresh(int, String...) refreshed} or, if zero, the directory never expires
+     * @param path path to the directory to create
+     * @return true if the directory did not previously exist
+     */
+    public boolean createDirIfNotExists(final int ttl, final String... path) throws IOException, EtcdException {
+        return access(EtcdOperation.CREATE_DIR_IF_NOT_EXISTS, new Accessor<Boolean>() {
+            @Override
+            public Boolean access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
+
+                final Response response = send(HttpMethod.PUT, builtUri,
+                        "prevExist", "false",
+                        "dir", "true",
+                        ttlParam(ttl), String.valueOf(ttl));
+
+                return succeededUnlessConflict(response);
             }
         });
     }
@@ -170,10 +335,10 @@ public class EtcdService {
      * @throws EtcdException
      */
     public Node get(final String... path) throws IOException, EtcdException {
-        return access(new Accessor<Node>() {
+        return readAccess(EtcdOperation.GET, new Accessor<Node>() {
             @Override
-            public Node access(URI uri) throws RestClientException, IOException {
-                final URI builtUri = buildPathUri(uri, path);
+            public Node access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
 
                 final Response response = doGet(builtUri);
                 return response != null ? response.getNode() : null;
@@ -181,6 +346,124 @@ public class EtcdService {
         });
     }
 
+    /**
+     * @param recursive if true and the path is a directory, the entire subtree is included
+     * @param path      the path of the node to get
+     * @return the full response, where {@link Response#getIndex()} is the etcd index as of the read,
+     * or null if the path didn't exist
+     */
+    public Response getResponse(final boolean recursive, final String... path) throws IOException, EtcdException {
+        return readAccess(EtcdOperation.GET_RESPONSE, new Accessor<Response>() {
+            @Override
+            public Response access(URI uri) throws RestClientException, IOException, EtcdException {
+                return doGet(recursive ? keyUris.build(uri, path, "recursive", "true") : keyUris.build(uri, path));
+            }
+        });
+    }
+
+    /**
+     * Like {@link #getResponse(boolean, String...)}, but a missing path is reported with the index of the read
+     * so that a watch can start right after it without missing the path's creation.
+     *
+     * @return the full response or, if the path didn't exist, etcd's {@link EtcdError#EcodeKeyNotFound} error,
+     * whose {@link Response#getIndex()} is still the etcd index as of the read
+     */
+    Response getResponseOrMissing(final boolean recursive, final String... path) throws IOException, EtcdException {
+        return readAccess(EtcdOperation.GET_RESPONSE, new Accessor<Response>() {
+            @Override
+            public Response access(URI uri) throws RestClientException, IOException, EtcdException {
+                final Response response = send(HttpMethod.GET,
+                        recursive ? keyUris.build(uri, path, "recursive", "true") : keyUris.build(uri, path));
+                if (!is(response, EtcdError.EcodeKeyNotFound)) {
+                    checkSucceeded(response);
+                }
+                return response;
+            }
+        });
+    }
+
+    /**
+     * @return true if the response is etcd's error for a missing key
+     */
+    static boolean isMissing(Response response) {
+        return is(response, EtcdError.EcodeKeyNotFound);
+    }
+
+    /**
+     * Long-polls etcd for the next change of the node at the given path.
+     *
+     * @param waitIndex the index of the earliest change to report, typically one more than the last
+     *                  <code>modifiedIndex</code> seen. Zero waits for the next change from now.
+     * @param recursive if true, changes to any node beneath the path are reported
+     * @param path      the path of the node to watch
+     * @return the change event or null if the transport's read timeout elapsed before any change
+     * @throws ClientEtcdException with {@link EtcdError#EcodeEventIndexCleared} when etcd no longer retains
+     *                             the history back to the given index
+     */
+    public Response waitForChange(final long waitIndex, final boolean recursive, final String... path)
+            throws IOException, EtcdException {
+        return readAccess(EtcdOperation.WAIT_FOR_CHANGE, new Accessor<Response>() {
+            @Override
+            public Response access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path,
+                        "wait", "true",
+                        waitIndex > 0 ? "waitIndex" : null, String.valueOf(waitIndex),
+                        recursive ? "recursive" : null, "true");
+
+                try {
+                    final Response response = etcdTemplate.exchange(builtUri, HttpMethod.GET, null);
+                    checkSucceeded(response);
+                    return response;
+                } catch (ResourceAccessException e) {
+                    if (e.getCause() instanceof SocketTimeoutException) {
+                        return null;
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a watch of the given path and everything beneath it. Register one or more listeners and then
+     * {@link EtcdWatch#start() start} it.
+     *
+     * @param path the path to watch
+     */
+    public EtcdWatch watch(String... path) {
+        return new EtcdWatch(this, path);
+    }
+
+    /**
+     * Creates a refresher that keeps any number of expiring keys alive from a single thread. The caller
+     * is responsible for {@link KeyRefresher#close() closing} it.
+     */
+    public KeyRefresher createRefresher(RefresherSettings settings) {
+        return new KeyRefresher(this, settings);
+    }
+
+    /**
+     * Creates a lock whose contenders queue up beneath the given directory.
+     *
+     * @param owner identifies this contender to {@link EtcdLock#getHolder()}
+     * @param ttl   in seconds after which the key of a contender that stopped refreshing it expires
+     * @param path  the directory of the lock, which is shared by all of its contenders
+     */
+    public EtcdLock createLock(String owner, int ttl, String... path) {
+        return new EtcdLock(this, owner, ttl, path);
+    }
+
+    /**
+     * Creates an election whose candidates queue up beneath the given directory.
+     *
+     * @param candidate identifies this candidate to {@link LeaderElection#getLeader()}
+     * @param ttl       in seconds after which the key of a candidate that stopped refreshing it expires
+     * @param path      the directory of the election, which is shared by all of its candidates
+     */
+    public LeaderElection createLeaderElection(String candidate, int ttl, String... path) {
+        return new LeaderElection(this, candidate, ttl, path);
+    }
+
     /**
      *
      * @param path the base path of the nodes to bulk-get
@@ -188,10 +471,10 @@ public class EtcdService {
      * @throws IllegalStateException if the given path was not a directory
      */
     public BulkGetter bulkGet(final String... path) throws IllegalStateException, IOException, EtcdException {
-        return access(new Accessor<BulkGetter>() {
+        return readAccess(EtcdOperation.BULK_GET, new Accessor<BulkGetter>() {
             @Override
-            public BulkGetter access(URI uri) throws RestClientException, IOException {
-                final URI builtUri = buildPathUri(uri, path);
+            public BulkGetter access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
 
                 final Response response = doGet(builtUri);
                 if (response == null) {
@@ -208,6 +491,93 @@ public class EtcdService {
         });
     }
 
+    /**
+     * Fetches the directory at the given path in a single request so that the returned getter can
+     * serve {@link BulkGetter#get(String)} from memory rather than one request per key.
+     *
+     * @param recursive if true, the entire subtree is fetched and nested sub-keys, such as <code>"a/b"</code>,
+     *                  are also served from memory. Otherwise, only the immediate children are fetched
+     *                  and nested sub-keys are retrieved individually.
+     * @param sorted    if true, etcd returns the children in key order, which is the order reported by
+     *                  {@link BulkGetter#getSubKeys()}
+     * @param path      the base path of the nodes to bulk-load
+     * @return a loaded getter or null if the initial path didn't exist
+     * @throws IllegalStateException if the given path was not a directory
+     */
+    public BulkGetter bulkLoad(final boolean recursive, final boolean sorted, final String... path)
+            throws IllegalStateException, IOException, EtcdException {
+        return readAccess(EtcdOperation.BULK_LOAD, new Accessor<BulkGetter>() {
+            @Override
+            public BulkGetter access(URI uri) throws RestClientException, IOException, EtcdException {
+                final Response response = doGet(keyUris.build(uri, path,
+                        recursive ? "recursive" : null, "true",
+                        sorted ? "sorted" : null, "true"));
+                if (response == null) {
+                    return null;
+                }
+
+                final Node node = response.getNode();
+                if (!node.isDir()) {
+                    throw new IllegalStateException("Node is not a directory: " + node.getKey());
+                }
+
+                return new BulkGetter(node, recursive);
+            }
+        });
+    }
+
+    /**
+     * Recursively reads the given path into a {@link CompactTree}, which is far smaller than the equivalent
+     * {@link Node}s when holding a large tree in memory.
+     *
+     * @param path the path of the directory, or key, to load
+     * @return the loaded tree or null if the path didn't exist
+     */
+    public CompactTree loadTree(final String... path) throws IOException, EtcdException {
+        return readAccess(EtcdOperation.LOAD_TREE, new Accessor<CompactTree>() {
+            @Override
+            public CompactTree access(URI uri) throws RestClientException, IOException, EtcdException {
+                final Response response = doGet(keyUris.build(uri, path, "recursive", "true"));
+                return response != null ? CompactTree.from(response.getNode()) : null;
+            }
+        });
+    }
+
+    /**
+     * Recursively reads the given path, handing each key beneath it to the callback as it is parsed rather than
+     * decoding the entire subtree first, so memory use stays flat no matter how large the directory is.
+     *
+     * @param callback receives each key that is not a directory
+     * @param path     the path of the directory, or key, to read
+     * @return the etcd index as of the read or -1 if the path didn't exist
+     */
+    public long streamLeaves(final NodeCallback callback, final String... path) throws IOException, EtcdException {
+        return readAccess(EtcdOperation.STREAM_LEAVES, new Accessor<Long>() {
+            @Override
+            public Long access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path, "recursive", "true");
+
+                final Response[] error = new Response[1];
+                final Long etcdIndex = etcdTemplate.execute(builtUri, HttpMethod.GET, null, new ResponseExtractor<Long>() {
+                    @Override
+                    public Long extractData(ClientHttpResponse response) throws IOException {
+                        if (response.getStatusCode().is4xxClientError()) {
+                            error[0] = etcdTemplate.decode(response);
+                            return -1L;
+                        }
+                        new StreamingNodeReader(callback).read(response.getBody());
+                        final String etcdIndex = response.getHeaders().getFirst(HEADER_ETCD_INDEX);
+                        return etcdIndex != null ? Long.parseLong(etcdIndex) : 0;
+                    }
+                });
+                if (error[0] != null && !is(error[0], EtcdError.EcodeKeyNotFound)) {
+                    throw ClientEtcdException.buildFrom(error[0]);
+                }
+                return etcdIndex;
+            }
+        });
+    }
+
     /**
      * @param newValue
      * @param prevIndex the existing <code>modifiedIndex</code> of the node to update
@@ -216,71 +586,188 @@ public class EtcdService {
      * @throws IOException
      * @throws EtcdException
      */
-    public boolean updateKeyAtomically(final String newValue, final int prevIndex, final String key) throws IOException, EtcdException {
-        return access(new Accessor<Boolean>() {
+    public boolean updateKeyAtomically(String newValue, long prevIndex, String key) throws IOException, EtcdException {
+        return updateKeyAtomically(newValue, prevIndex, 0, key);
+    }
+
+    /**
+     * @param newValue
+     * @param prevIndex the existing <code>modifiedIndex</code> of the node to update
+     * @param ttl       in seconds after which etcd expires the updated key or, if zero, the key no longer expires,
+     *                  since etcd replaces the TTL of a key along with its value
+     * @param key       the path to the key to update
+     * @return true if the update was successful
+     */
+    public boolean updateKeyAtomically(final String newValue, final long prevIndex, final int ttl, final String key)
+            throws IOException, EtcdException {
+        return access(EtcdOperation.UPDATE_KEY_ATOMICALLY, new Accessor<Boolean>() {
             @Override
-            public Boolean access(URI uri) throws RestClientException, IOException {
-                final UriComponentsBuilder uriBuilder = createKeysUriBuilder(uri)
-                        .path(key);
-                final URI builtUri = uriBuilder.build().toUri();
+            public Boolean access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.buildKey(uri, key);
 
-                try {
-                    doPut(builtUri,
-                            "value", newValue,
-                            "prevIndex", String.valueOf(prevIndex));
-
-                    return true;
-                } catch (HttpClientErrorException e) {
-                    if (e.getStatusCode() == HttpStatus.PRECONDITION_FAILED) {
-                        return false;
-                    }
-                    throw e;
-                }
+                final Response response = send(HttpMethod.PUT, builtUri,
+                        "value", newValue,
+                        "prevIndex", String.valueOf(prevIndex),
+                        ttlParam(ttl), String.valueOf(ttl));
+
+                return succeededUnlessConflict(response);
             }
         });
     }
 
-    public boolean updateKeyAtomically(final String newValue, final String previousValue, final String... path) throws IOException, EtcdException {
-        return access(new Accessor<Boolean>() {
+    /**
+     * @deprecated use {@link #updateKeyAtomically(String, long, String)} since etcd indexes can exceed the range
+     * of an int
+     */
+    @Deprecated
+    public boolean updateKeyAtomically(String newValue, int prevIndex, String key) throws IOException, EtcdException {
+        return updateKeyAtomically(newValue, (long) prevIndex, key);
+    }
+
+    public boolean updateKeyAtomically(String newValue, String previousValue, String... path) throws IOException, EtcdException {
+        return updateKeyAtomically(newValue, previousValue, 0, path);
+    }
+
+    /**
+     * @param ttl in seconds after which etcd expires the updated key or, if zero, the key no longer expires,
+     *            since etcd replaces the TTL of a key along with its value
+     * @return true if the update was successful
+     */
+    public boolean updateKeyAtomically(final String newValue, final String previousValue, final int ttl,
+                                       final String... path) throws IOException, EtcdException {
+        return access(EtcdOperation.UPDATE_KEY_ATOMICALLY, new Accessor<Boolean>() {
             @Override
             public Boolean access(URI uri) throws RestClientException, IOException, EtcdException {
-                final URI builtUri = buildPathUri(uri, path);
+                final URI builtUri = keyUris.build(uri, path);
 
-                try {
-                    doPut(builtUri,
-                            "prevValue", previousValue,
-                            "value", newValue);
-                } catch (HttpClientErrorException e) {
-                    if (e.getStatusCode() == HttpStatus.PRECONDITION_FAILED) {
-                        return false;
-                    }
-                    else if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-                        throw new EtcdException(builtUri.toString(), EtcdError.EcodeKeyNotFound);
-                    }
-                    throw e;
+                final Response response = send(HttpMethod.PUT, builtUri,
+                        "prevValue", previousValue,
+                        "value", newValue,
+                        ttlParam(ttl), String.valueOf(ttl));
+
+                return succeededUnlessConflict(response);
+            }
+        });
+    }
+
+    /**
+     * Atomically updates the key with the given path using {@link #compute(ComputeSettings, NodeUpdater, String...)}
+     * with the default {@link ComputeSettings}.
+     */
+    public Node compute(NodeUpdater updater, String... path) throws IOException, EtcdException {
+        return compute(new ComputeSettings(), updater, path);
+    }
+
+    /**
+     * Atomically updates the key with the given path by reading it, computing its new value and then swapping
+     * that in only if the key hasn't changed since it was read. On a conflict, the compute backs off for a
+     * random time and tries again. A key that expires keeps expiring, with the TTL it had left when read.
+     *
+     * @param settings the bounds of the retries
+     * @param updater  computes the new value from the current node or null if the key doesn't exist yet
+     * @param path     the path of the key
+     * @return the node as written or, if the updater left it unchanged, as read
+     * @throws EtcdException with {@link EtcdError#EcodeTestFailed} if every attempt conflicted with another writer
+     */
+    public Node compute(ComputeSettings settings, NodeUpdater updater, String... path)
+            throws IOException, EtcdException {
+        final EtcdMetrics metrics = this.metrics;
+        final long start = System.nanoTime();
+        boolean succeeded = false;
+        metrics.operationStarted(EtcdOperation.COMPUTE);
+        try {
+            for (int attempt = 1; ; ++attempt) {
+                final Response current = readLatest(path);
+                final Node currentNode = current != null ? current.getNode() : null;
+                final String newValue = updater.update(currentNode);
+                if (newValue == null) {
+                    succeeded = true;
+                    return currentNode;
                 }
 
-                return true;
+                final Node written = swap(newValue, currentNode, path);
+                if (written != null) {
+                    metrics.conditionCompleted(EtcdOperation.COMPUTE, true);
+                    succeeded = true;
+                    return written;
+                }
+                if (attempt >= settings.getMaxAttempts()) {
+                    metrics.conditionCompleted(EtcdOperation.COMPUTE, false);
+                    throw new EtcdException(String.format("Gave up computing %s after %d conflicting attempts",
+                            EtcdUtils.join(path), attempt), EtcdError.EcodeTestFailed);
+                }
+                backoff(settings.backoffCeiling(attempt));
+            }
+        } finally {
+            metrics.operationCompleted(EtcdOperation.COMPUTE, System.nanoTime() - start, succeeded);
+        }
+    }
+
+    /**
+     * Reads from the machine that writes stick to, so that the read isn't behind the swap that follows.
+     */
+    private Response readLatest(final String... path) throws IOException, EtcdException {
+        return access(EtcdOperation.GET, new Accessor<Response>() {
+            @Override
+            public Response access(URI uri) throws RestClientException, IOException, EtcdException {
+                // not coalesced, since a shared read may have started before the caller's latest write
+                return fetch(keyUris.build(uri, path));
+            }
+        });
+    }
+
+    /**
+     * @param current the node that was read or null if the key didn't exist
+     * @return the written node or null if the key had changed since it was read
+     */
+    private Node swap(final String newValue, final Node current, final String... path)
+            throws IOException, EtcdException {
+        final EtcdOperation operation = current != null ?
+                EtcdOperation.UPDATE_KEY_ATOMICALLY : EtcdOperation.PUT_IF_NOT_EXISTS;
+        final Node written = access(operation, new Accessor<Node>() {
+            @Override
+            public Node access(URI uri) throws RestClientException, IOException, EtcdException {
+                final URI builtUri = keyUris.build(uri, path);
+                final Response response = current != null ?
+                        send(HttpMethod.PUT, builtUri,
+                                "value", newValue,
+                                "prevIndex", String.valueOf(current.getModifiedIndex()),
+                                ttlParam(current.getTtl()), String.valueOf(current.getTtl())) :
+                        send(HttpMethod.PUT, builtUri,
+                                "prevExist", "false",
+                                "value", newValue);
+                // a missing key means it was deleted since it was read
+                if (isConflict(response) || is(response, EtcdError.EcodeKeyNotFound)) {
+                    return null;
+                }
+                checkSucceeded(response);
+                return response.getNode();
             }
         });
+        metrics.conditionCompleted(operation, written != null);
+        return written;
+    }
+
+    private static void backoff(long ceiling) throws InterruptedIOException {
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
     }
 
     public void deleteKey(final String key) throws IOException, EtcdException {
-        access(new Accessor<Void>() {
+        access(EtcdOperation.DELETE_KEY, new Accessor<Void>() {
             @Override
             public Void access(URI uri) throws RestClientException, IOException, EtcdException {
-                final UriComponentsBuilder uriBuilder = createKeysUriBuilder(uri)
-                        .path(key);
-                final URI builtUri = uriBuilder.build().toUri();
+                final URI builtUri = keyUris.buildKey(uri, key);
 
-                try {
-                    restTemplate.delete(builtUri);
-                } catch (HttpClientErrorException e) {
-                    if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-                        throw new EtcdException(builtUri.toString(), EtcdError.EcodeKeyNotFound);
-                    }
-                    throw e;
-                }
+                checkSucceeded(send(HttpMethod.DELETE, builtUri));
+                knownDirs.forget(EtcdBatch.toKey(key));
 
                 return null;
             }
@@ -295,54 +782,215 @@ public class EtcdService {
      * @throws IOException
      * @throws EtcdException
      */
-    public boolean deleteKeyAtomically(final String key, final int prevIndex) throws IOException, EtcdException {
-        return access(new Accessor<Boolean>() {
+    public boolean deleteKeyAtomically(final String key, final long prevIndex) throws IOException, EtcdException {
+        return access(EtcdOperation.DELETE_KEY_ATOMICALLY, new Accessor<Boolean>() {
             @Override
             public Boolean access(URI uri) throws RestClientException, IOException, EtcdException {
-                final UriComponentsBuilder uriBuilder = createKeysUriBuilder(uri)
-                        .path(key)
-                        .queryParam("prevIndex", String.valueOf(prevIndex));
-                final URI builtUri = uriBuilder.build().toUri();
+                final URI builtUri = keyUris.buildKey(uri, key, "prevIndex", String.valueOf(prevIndex));
 
-                try {
-                    restTemplate.delete(builtUri);
-                } catch (HttpClientErrorException e) {
-                    if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-                        throw new EtcdException(builtUri.toString(), EtcdError.EcodeKeyNotFound);
-                    }
-                    else if (e.getStatusCode() == HttpStatus.PRECONDITION_FAILED) {
-                        return false;
-                    }
-                    throw e;
+                final boolean deleted = succeededUnlessConflict(send(HttpMethod.DELETE, builtUri));
+                if (deleted) {
+                    knownDirs.forget(EtcdBatch.toKey(key));
                 }
+                return deleted;
+            }
+        });
+    }
 
-                return true;
+    /**
+     * @deprecated use {@link #deleteKeyAtomically(String, long)} since etcd indexes can exceed the range of an int
+     */
+    @Deprecated
+    public boolean deleteKeyAtomically(String key, int prevIndex) throws IOException, EtcdException {
+        return deleteKeyAtomically(key, (long) prevIndex);
+    }
+
+    /**
+     * Sends the operations of the batch over several connections at once, optionally paced to a target
+     * throughput. Unlike the individual operations, a failed precondition or any other error doesn't
+     * throw but is reported in the result of that operation.
+     *
+     * @return the result of each operation in the order they were added to the batch
+     * @throws InterruptedException if interrupted while waiting for the batch, in which case the remaining
+     *                              operations are abandoned
+     */
+    public List<BatchResult> execute(EtcdBatch batch, BatchSettings settings) throws InterruptedException {
+        final int workers = Math.max(1, Math.min(settings.getConcurrency(), batch.size()));
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "etcd-batch");
+                thread.setDaemon(true);
+                return thread;
             }
         });
+        try {
+            return execute(batch, settings, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param executor runs the workers of the batch, which is left running for reuse by the caller
+     */
+    List<BatchResult> execute(EtcdBatch batch, BatchSettings settings, ExecutorService executor)
+            throws InterruptedException {
+        final List<EtcdBatch.Operation> operations = batch.getOperations();
+        final BatchResult[] results = new BatchResult[operations.size()];
+        if (operations.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final RateLimiter rateLimiter = settings.getTargetThroughput() > 0 ?
+                new RateLimiter(settings.getTargetThroughput()) : null;
+        final AtomicInteger next = new AtomicInteger();
+        final int workers = Math.max(1, Math.min(settings.getConcurrency(), operations.size()));
+        final List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; ++i) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException {
+                    int pos;
+                    while ((pos = next.getAndIncrement()) < results.length) {
+                        if (rateLimiter != null) {
+                            rateLimiter.acquire();
+                        }
+                        results[pos] = execute(operations.get(pos));
+                    }
+                    return null;
+                }
+            });
+        }
+
+        executor.invokeAll(tasks);
+        return Arrays.asList(results);
     }
 
-    private URI buildPathUri(URI uri, String[] path) {
-        final UriComponentsBuilder uriBuilder = createKeysUriBuilder(uri);
-        if (!path[0].startsWith(SEP)) {
-            path[0] = SEP + path[0];
+    private BatchResult execute(final EtcdBatch.Operation operation) {
+        try {
+            return access(operation.operation, new Accessor<BatchResult>() {
+                @Override
+                public BatchResult access(URI uri) throws RestClientException, IOException {
+                    final URI builtUri = keyUris.buildKey(uri, operation.key, operation.query);
+
+                    final Response response = send(operation.method, builtUri, operation.params);
+                    if (response.getErrorCode() != 0) {
+                        if (operation.operation.isConditional() && isConflict(response)) {
+                            metrics.conditionCompleted(operation.operation, false);
+                        }
+                        return new BatchResult(operation.operation, operation.key, null,
+                                EtcdError.resolve(response.getErrorCode()), null);
+                    }
+
+                    if (operation.method == HttpMethod.DELETE) {
+                        knownDirs.forget(operation.key);
+                    }
+                    if (operation.operation.isConditional()) {
+                        metrics.conditionCompleted(operation.operation, true);
+                    }
+                    return new BatchResult(operation.operation, operation.key, response.getNode(), null, null);
+                }
+            });
+        } catch (IOException | EtcdException | RuntimeException e) {
+            return new BatchResult(operation.operation, operation.key, null, null, e);
         }
-        uriBuilder.path(EtcdUtils.join(path));
-        return uriBuilder.build().toUri();
     }
 
+    /**
+     * Performs a write, or a read that must observe the latest writes, against the machine writes stick to.
+     */
     protected <T> T access(Accessor<T> accessor) throws RestClientException, EtcdException, IOException {
-        for (int tries = 0; tries < machineCount; ++tries) {
+        return access(false, EtcdOperation.OTHER, accessor);
+    }
+
+    /**
+     * Performs a write, or a read that must observe the latest writes, reporting it to the
+     * {@link #setMetrics(EtcdMetrics) metrics} as the given operation.
+     */
+    protected <T> T access(EtcdOperation operation, Accessor<T> accessor)
+            throws RestClientException, EtcdException, IOException {
+        return access(false, operation, accessor);
+    }
+
+    /**
+     * Performs a read against the machine chosen by the {@link #setReadSelector(MachineSelector) read selector}.
+     */
+    protected <T> T readAccess(Accessor<T> accessor) throws RestClientException, EtcdException, IOException {
+        return access(true, EtcdOperation.OTHER, accessor);
+    }
+
+    /**
+     * Performs a read against the machine chosen by the {@link #setReadSelector(MachineSelector) read selector},
+     * reporting it to the {@link #setMetrics(EtcdMetrics) metrics} as the given operation.
+     */
+    protected <T> T readAccess(EtcdOperation operation, Accessor<T> accessor)
+            throws RestClientException, EtcdException, IOException {
+        return access(true, operation, accessor);
+    }
+
+    private <T> T access(boolean read, EtcdOperation operation, Accessor<T> accessor)
+            throws RestClientException, EtcdException, IOException {
+        final EtcdMetrics metrics = this.metrics;
+        if (metrics == EtcdMetrics.NOOP) {
+            return attempt(read, operation, accessor);
+        }
+
+        final long start = System.nanoTime();
+        boolean succeeded = false;
+        metrics.operationStarted(operation);
+        try {
+            final T result = attempt(read, operation, accessor);
+            if (operation.isConditional() && result instanceof Boolean) {
+                metrics.conditionCompleted(operation, (Boolean) result);
+            }
+            succeeded = true;
+            return result;
+        } finally {
+            metrics.operationCompleted(operation, System.nanoTime() - start, succeeded);
+        }
+    }
+
+    private <T> T attempt(boolean read, EtcdOperation operation, Accessor<T> accessor)
+            throws RestClientException, EtcdException, IOException {
+        // long-polls would otherwise look like slow, permanently outstanding reads of whichever machine serves them
+        final MachineSelector selector = operation.isLongPoll() ? null : machines.getReadSelector();
+        for (int tries = 0; tries < machines.size(); ++tries) {
+            final Machines.Sticky observed = machines.sticky();
+            final URI machine = read ? machines.forRead(observed) : machines.forWrite(observed);
+            final long start = selector != null ? System.nanoTime() : 0;
+            boolean succeeded = false;
+            if (selector != null) {
+                selector.requestStarted(machine);
+            }
             try {
 
-                return accessor.access(currentMachine);
+                final T result = accessor.access(machine);
+                succeeded = true;
+                return result;
 
-            } catch (ConnectException e) {
-                LOG.info("Connection to {} failed: {}", currentMachine, e.getMessage());
-                synchronized (this) {
-                    if (++machinePos >= machines.length) {
-                        machinePos = 0;
-                    }
-                    currentMachine = machines[machinePos];
+            } catch (IOException e) {
+                if (!Machines.isConnectFailure(e)) {
+                    throw e;
+                }
+                failover(machine, observed, e);
+            } catch (ResourceAccessException e) {
+                // RestTemplate wraps the transport's IOException
+                if (!Machines.isConnectFailure(e)) {
+                    throw e;
+                }
+                failover(machine, observed, e.getCause());
+            } catch (HttpServerErrorException e) {
+                // the machine responded, so it is reachable
+                succeeded = true;
+                metrics.machineError(machine, e);
+                throw e;
+            } catch (HttpStatusCodeException e) {
+                succeeded = true;
+                throw e;
+            } finally {
+                if (selector != null) {
+                    selector.requestCompleted(machine, System.nanoTime() - start, succeeded);
                 }
             }
         }
@@ -350,47 +998,261 @@ public class EtcdService {
         throw new NoUsableMachinesException();
     }
 
-    private void createDir(URI builtUri) {
-        final ResponseEntity<Response> createResponse = doPut(builtUri,
+    private void failover(URI machine, Machines.Sticky observed, Throwable cause) {
+        LOG.info("Connection to {} failed: {}", machine, cause.getMessage());
+        metrics.machineError(machine, cause);
+        if (machines.failover(machine, observed)) {
+            metrics.failover(machine);
+        }
+    }
+
+    /**
+     * @param metrics receives the timing and outcome of every operation or, if {@link EtcdMetrics#NOOP},
+     *                nothing is measured
+     */
+    public void setMetrics(EtcdMetrics metrics) {
+        this.metrics = metrics != null ? metrics : EtcdMetrics.NOOP;
+    }
+
+    public EtcdMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param dirCacheSize the number of directories {@link #ensureDir(String...)} remembers as existing or zero
+     *                     to always ask etcd
+     */
+    public void setDirCacheSize(int dirCacheSize) {
+        knownDirs.setMaxSize(dirCacheSize);
+    }
+
+    /**
+     * @param coalesceReads if true, concurrent reads of the same key, such as many threads reloading a hot key
+     *                      at once, share a single request and all receive the same {@link Response} and
+     *                      {@link Node} instances, which therefore shouldn't be modified
+     */
+    public void setCoalesceReads(boolean coalesceReads) {
+        this.coalesceReads = coalesceReads;
+    }
+
+    /**
+     * @param readSelector chooses the machine for each read or, if null, reads go to the same machine as writes
+     */
+    public void setReadSelector(MachineSelector readSelector) {
+        machines.setReadSelector(readSelector);
+    }
+
+    /**
+     * @param ejectionTime in milliseconds that an unreachable machine is avoided before being tried again
+     */
+    public void setEjectionTime(long ejectionTime) {
+        machines.setEjectionTime(ejectionTime);
+    }
+
+    /**
+     * @param writesToLeader if true, writes are sent to the machine that last reported itself as leader
+     *                       to the {@link #startHealthChecks(long) health checks}, when there is one
+     */
+    public void setWritesToLeader(boolean writesToLeader) {
+        machines.setWritesToLeader(writesToLeader);
+    }
+
+    /**
+     * @return every machine this service was given, in their configured order
+     */
+    public List<URI> getMachines() {
+        return machines.getAll();
+    }
+
+    /**
+     * @return true if the machine is currently being avoided after it couldn't be reached
+     */
+    public boolean isEjected(URI machine) {
+        return machines.isEjected(machine);
+    }
+
+    /**
+     * Starts probing every machine in the background, ejecting those that fail and re-admitting them once
+     * they answer again. The health checks are stopped by {@link #close()}.
+     *
+     * @param interval in milliseconds between probes of each machine
+     */
+    public synchronized MachineHealthChecker startHealthChecks(long interval) {
+        if (healthChecker == null) {
+            healthChecker = new MachineHealthChecker(machines, interval);
+        }
+        return healthChecker;
+    }
+
+    /**
+     * @return the single background thread shared by every {@link EtcdLock} of this service to refresh
+     * their keys, created on first use
+     */
+    synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "etcd-heartbeat");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Stops any health checks and key refreshes and releases the connection pool, if this service created one
+     * from {@link TransportSettings}.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (healthChecker != null) {
+                healthChecker.close();
+                healthChecker = null;
+            }
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        if (ownedRequestFactory instanceof DisposableBean) {
+            try {
+                ((DisposableBean) ownedRequestFactory).destroy();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Failed to release transport", e);
+            }
+        }
+    }
+
+    /**
+     * @return the name of the TTL form parameter or null to leave it out when the key shouldn't expire
+     */
+    static String ttlParam(int ttl) {
+        return ttl > 0 ? "ttl" : null;
+    }
+
+    private void createDir(URI builtUri) throws EtcdException {
+        final Response createResponse = send(HttpMethod.PUT, builtUri,
                 "dir", "true",
                 "prevExist", "false");
         LOG.debug("createDir of {} got {}", builtUri, createResponse);
+        if (!is(createResponse, EtcdError.EcodeNodeExist)) {
+            checkSucceeded(createResponse);
+        }
     }
 
-    private UriComponentsBuilder createKeysUriBuilder(URI uri) {
-        return UriComponentsBuilder.fromUri(uri)
-                .path("/v2/keys");
+    /**
+     * @return the response, where etcd's client errors are decoded into {@link Response#getErrorCode()}
+     * rather than thrown
+     */
+    protected ResponseEntity<Response> doPut(URI builtUri, String... params) {
+        final RequestEntity<LinkedMultiValueMap<String, String>> req = buildFormRequest(HttpMethod.PUT, builtUri, params);
+
+        return etcdTemplate.exchange(builtUri, HttpMethod.PUT, req, Response.class);
     }
 
-    protected ResponseEntity<Response> doPut(URI builtUri, String... params) {
+    /**
+     * @param params alternating form parameter names and values, where a pair with a null name is left out
+     */
+    static RequestEntity<LinkedMultiValueMap<String, String>> buildFormRequest(HttpMethod method, URI builtUri,
+                                                                               String... params) {
         LinkedMultiValueMap<String, String> body = new LinkedMultiValueMap<>();
-        for (int i = 0; i < params.length - 1; ++i) {
-            body.add(params[i], params[i + 1]);
+        for (int i = 0; i < params.length - 1; i += 2) {
+            if (params[i] != null) {
+                body.add(params[i], params[i + 1]);
+            }
         }
 
-        final RequestEntity<LinkedMultiValueMap<String, String>> req =
-                new RequestEntity<>(body, HEADERS_FORM_URLENCODED, HttpMethod.PUT, builtUri);
-
-        return restTemplate.exchange(builtUri, HttpMethod.PUT, req, Response.class);
+        return new RequestEntity<>(body, HEADERS_FORM_URLENCODED, method, builtUri);
     }
 
     /**
-     * Takes care of catching "not found" and returning null in that case
+     * Takes care of catching "not found" and returning null in that case. When
+     * {@link #setCoalesceReads(boolean) coalescing}, concurrent reads of the same URI share one request.
      * @param builtUri
-     * @return the response containing the node or null if not found
+     * @return the response containing the node or null if not found. The response's index is populated
+     * from the <code>X-Etcd-Index</code> header.
      */
-    protected Response doGet(URI builtUri) {
+    protected Response doGet(final URI builtUri) throws EtcdException {
+        if (!coalesceReads) {
+            return fetch(builtUri);
+        }
+
         try {
-            final Response response = restTemplate.getForObject(builtUri, Response.class);
-            return response;
-        } catch (HttpClientErrorException e) {
-            if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-                return null;
+            return readsInFlight.execute(builtUri, new Callable<Response>() {
+                @Override
+                public Response call() throws EtcdException {
+                    return fetch(builtUri);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting for a shared read of " + builtUri,
+                    new InterruptedIOException());
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof EtcdException) {
+                throw (EtcdException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
             }
-            throw e;
+            throw new IllegalStateException("Unexpected failure of shared read", cause);
+        }
+    }
+
+    private Response fetch(URI builtUri) throws EtcdException {
+        final Response response = etcdTemplate.exchange(builtUri, HttpMethod.GET, null);
+        if (is(response, EtcdError.EcodeKeyNotFound)) {
+            return null;
+        }
+        checkSucceeded(response);
+        return response;
+    }
+
+    /**
+     * Sends a request without throwing for etcd's client errors.
+     *
+     * @param params alternating form parameter names and values, if any
+     * @return the response, where a non-zero {@link Response#getErrorCode()} reports etcd's error
+     */
+    private Response send(HttpMethod method, URI builtUri, String... params) {
+        return etcdTemplate.exchange(builtUri, method,
+                params.length > 0 ? buildFormRequest(method, builtUri, params) : null);
+    }
+
+    /**
+     * @return true if etcd applied the conditional request or false if its precondition wasn't met
+     * @throws ClientEtcdException for any other error, such as a missing key for a compare-and-swap
+     */
+    static boolean succeededUnlessConflict(Response response) throws ClientEtcdException {
+        if (isConflict(response)) {
+            return false;
+        }
+        checkSucceeded(response);
+        return true;
+    }
+
+    static void checkSucceeded(Response response) throws ClientEtcdException {
+        if (response.getErrorCode() != 0) {
+            throw ClientEtcdException.buildFrom(response);
         }
     }
 
+    private static boolean isConflict(Response response) {
+        return is(response, EtcdError.EcodeTestFailed) || is(response, EtcdError.EcodeNodeExist);
+    }
+
+    static boolean is(Response response, EtcdError error) {
+        return response.getErrorCode() == error.getCode();
+    }
+
     protected interface Accessor<T> {
         T access(URI uri) throws RestClientException, IOException, EtcdException;
     }
@@ -398,24 +1260,93 @@ public class EtcdService {
     public class BulkGetter {
 
         private final String baseKey;
+        /**
+         * Loaded nodes keyed by their path relative to the base key, or null if each get should be retrieved
+         */
+        private final Map<String, Node> loaded;
+        private final boolean complete;
 
         public BulkGetter(String baseKey) {
+            this(baseKey, null, false);
+        }
+
+        /**
+         * @param dirNode  the fetched directory node, including its children
+         * @param complete true if the entire subtree was fetched
+         */
+        BulkGetter(Node dirNode, boolean complete) {
+            this(dirNode.getKey() != null ? dirNode.getKey() : SEP, new LinkedHashMap<String, Node>(), complete);
+            // the root directory's children start right after its "/"
+            index(baseKey.isEmpty() ? 1 : baseKey.length() + 2, dirNode.getNodes());
+        }
+
+        private BulkGetter(String baseKey, Map<String, Node> loaded, boolean complete) {
 
             this.baseKey = baseKey.startsWith(SEP) ? baseKey.substring(1) : baseKey;
+            this.loaded = loaded;
+            this.complete = complete;
         }
 
+        private void index(int relativeStart, List<Node> nodes) {
+            if (nodes == null) {
+                return;
+            }
+            for (Node node : nodes) {
+                loaded.put(node.getKey().substring(relativeStart), node);
+                index(relativeStart, node.getNodes());
+            }
+        }
+
+        /**
+         * @return true if this getter was created by {@link #bulkLoad(boolean, boolean, String...)}
+         */
+        public boolean isLoaded() {
+            return loaded != null;
+        }
+
+        /**
+         * @return the sub-keys that were loaded, in the order etcd returned them, or an empty list
+         * if this getter was not loaded
+         */
+        public List<String> getSubKeys() {
+            return loaded != null ? new ArrayList<>(loaded.keySet()) : Collections.<String>emptyList();
+        }
+
+        /**
+         * @param subKey the key relative to the base path, which may be nested such as <code>"a/b"</code>
+         * @return the node or null if it didn't exist
+         */
         public Node get(final String subKey) throws IOException, EtcdException {
-            return access(new Accessor<Node>() {
+            if (loaded != null) {
+                final String relativeKey = trimSeparators(subKey);
+                final Node node = loaded.get(relativeKey);
+                if (node != null || complete || !relativeKey.contains(SEP)) {
+                    return node;
+                }
+                // nested beneath a directory whose children were not fetched
+            }
+
+            return readAccess(EtcdOperation.GET, new Accessor<Node>() {
                 @Override
-                public Node access(URI uri) throws RestClientException, IOException {
-                    final UriComponentsBuilder uriBuilder = createKeysUriBuilder(uri)
-                        .pathSegment(baseKey, subKey);
-                    final URI builtUri = uriBuilder.build().toUri();
+                public Node access(URI uri) throws RestClientException, IOException, EtcdException {
+                    final URI builtUri = keyUris.build(uri, new String[]{baseKey, subKey});
 
                     final Response response = doGet(builtUri);
                     return response != null ? response.getNode() : null;
                 }
             });
         }
+
+        private String trimSeparators(String subKey) {
+            int start = 0;
+            int end = subKey.length();
+            while (start < end && subKey.charAt(start) == '/') {
+                ++start;
+            }
+            while (end > start && subKey.charAt(end - 1) == '/') {
+                --end;
+            }
+            return subKey.substring(start, end);
+        }
     }
 }
@@ -0,0 +1,119 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Response;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Exchanges requests of the keys API, handing back etcd's client errors, such as a missing key or a failed
+ * compare, as a decoded {@link Response} with its <code>errorCode</code> rather than throwing. Those outcomes are
+ * routine for conditional writes, so they shouldn't cost an exception, its stack trace and a buffered copy of
+ * the body. Server errors are still thrown so that the service can fail over. {@link AsyncEtcdTemplate} does the
+ * same for {@link AsyncEtcdService}.
+ *
+ * @author Geoff Bourne
+ * @since 7/14/2015
+ */
+class EtcdTemplate extends RestTemplate {
+    /**
+     * Only treats server errors as errors, leaving client errors to be decoded like any other response
+     */
+    static final ResponseErrorHandler SERVER_ERROR_HANDLER = new DefaultResponseErrorHandler() {
+        @Override
+        protected boolean hasError(HttpStatus statusCode) {
+            return statusCode.series() == HttpStatus.Series.SERVER_ERROR;
+        }
+    };
+
+    private final ResponseExtractor<Response> responseExtractor;
+
+    EtcdTemplate(ClientHttpRequestFactory requestFactory) {
+        super(requestFactory);
+        setErrorHandler(SERVER_ERROR_HANDLER);
+        responseExtractor = responseExtractor(getMessageConverters());
+    }
+
+    /**
+     * @param request the form to send or null for none
+     * @return the decoded response, where a non-zero {@link Response#getErrorCode()} reports an etcd error.
+     * The index is that of the body or else of the <code>X-Etcd-Index</code> header.
+     */
+    Response exchange(URI uri, HttpMethod method, HttpEntity<?> request) throws RestClientException {
+        return execute(uri, method,
+                request != null ? httpEntityCallback(request, Response.class) : acceptHeaderRequestCallback(Response.class),
+                responseExtractor);
+    }
+
+    /**
+     * Decodes a response obtained through one of the other <code>execute</code> methods, such as a client error
+     * that a streaming extractor declines to read.
+     */
+    Response decode(ClientHttpResponse response) throws IOException {
+        return responseExtractor.extractData(response);
+    }
+
+    /**
+     * @return an extractor that decodes both successful responses and client errors with {@link #decode}
+     */
+    static ResponseExtractor<Response> responseExtractor(List<HttpMessageConverter<?>> converters) {
+        final HttpMessageConverterExtractor<Response> bodyExtractor =
+                new HttpMessageConverterExtractor<>(Response.class, converters);
+        return new ResponseExtractor<Response>() {
+            @Override
+            public Response extractData(ClientHttpResponse response) throws IOException {
+                return decode(response, bodyExtractor);
+            }
+        };
+    }
+
+    private static Response decode(ClientHttpResponse response, HttpMessageConverterExtractor<Response> bodyExtractor)
+            throws IOException {
+        final HttpStatus status = response.getStatusCode();
+        Response decoded;
+        try {
+            decoded = bodyExtractor.extractData(response);
+        } catch (RestClientException notEtcd) {
+            // such as the error page of a proxy in front of etcd
+            decoded = null;
+        }
+        if (decoded == null) {
+            decoded = new Response();
+        }
+
+        if (status.is4xxClientError() && decoded.getErrorCode() == 0) {
+            final EtcdError error = fromStatus(status);
+            decoded.setErrorCode(error.getCode());
+            decoded.setMessage(error.getStrerror());
+        }
+        final String etcdIndex = response.getHeaders().getFirst(EtcdService.HEADER_ETCD_INDEX);
+        if (etcdIndex != null && (decoded.getErrorCode() == 0 || decoded.getIndex() == 0)) {
+            decoded.setIndex(Long.parseLong(etcdIndex));
+        }
+        return decoded;
+    }
+
+    static EtcdError fromStatus(HttpStatus status) {
+        switch (status) {
+            case NOT_FOUND:
+                return EtcdError.EcodeKeyNotFound;
+            case PRECONDITION_FAILED:
+                return EtcdError.EcodeTestFailed;
+            default:
+                return EtcdError.EcodeUnknown;
+        }
+    }
+}
@@ -22,7 +22,11 @@ public class EtcdUtils {
         return parts.get(parts.size() - 1);
     }
 
-    private static List<String> splitToList(String key) {
+    /**
+     * @param key a key path, such as <code>"/dir/key"</code>
+     * @return the non-empty parts of the key
+     */
+    public static List<String> splitToList(String key) {
         final String[] parts = key.split("/");
         List<String> ret = new ArrayList<String>();
         for (String part : parts) {
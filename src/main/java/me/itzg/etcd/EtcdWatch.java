@@ -0,0 +1,170 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Long-polls etcd for changes to a path and everything beneath it, delivering each change in order to all
+ * registered listeners. A single watch, and therefore a single outstanding request, serves any number of
+ * listeners.
+ * <p>
+ * The wait index advances past the <code>modifiedIndex</code> of each event, so no change is skipped
+ * between polls. If etcd has already cleared the history needed to resume, the watch re-reads the
+ * subtree, passes it to {@link WatchListener#onResync(Response)}, and continues from there.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 6/30/2015
+ */
+public class EtcdWatch implements Closeable {
+    private static Logger LOG = LoggerFactory.getLogger(EtcdWatch.class);
+
+    private static final long RETRY_DELAY = 1000;
+
+    private final EtcdService etcdService;
+    private final String[] path;
+    private final List<WatchListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private volatile long waitIndex;
+    private Thread thread;
+
+    EtcdWatch(EtcdService etcdService, String[] path) {
+        this.etcdService = etcdService;
+        this.path = path.clone();
+    }
+
+    public EtcdWatch addListener(WatchListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    public void removeListener(WatchListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the index of the next change to be reported
+     */
+    public long getWaitIndex() {
+        return waitIndex;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts reporting changes made after the current etcd index.
+     */
+    public void start() throws IOException, EtcdException {
+        // even when the watched path doesn't exist yet, etcd reports the index as of the read
+        start(etcdService.getResponseOrMissing(false, path).getIndex() + 1);
+    }
+
+    /**
+     * Starts reporting changes made at or after the given index, such as resuming from a previously
+     * observed <code>modifiedIndex + 1</code>.
+     */
+    public synchronized void start(long fromIndex) {
+        if (running) {
+            throw new IllegalStateException("Watch is already running");
+        }
+        waitIndex = fromIndex;
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchLoop();
+            }
+        }, "etcd-watch-" + EtcdUtils.join(path));
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the watch. A long-poll that is already outstanding is abandoned once it completes or
+     * reaches the transport's read timeout.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void watchLoop() {
+        while (running) {
+            try {
+                final Response event = etcdService.waitForChange(waitIndex, true, path);
+                if (event == null || !running) {
+                    continue;
+                }
+
+                final Node node = event.getNode();
+                if (node != null) {
+                    waitIndex = node.getModifiedIndex() + 1;
+                }
+                for (WatchListener listener : listeners) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (RuntimeException e) {
+                        LOG.warn("Watch listener failed to handle event", e);
+                    }
+                }
+
+            } catch (ClientEtcdException e) {
+                if (e.getEtcdError() == EtcdError.EcodeEventIndexCleared
+                        || e.getEtcdError() == EtcdError.EcodeWatcherCleared) {
+                    LOG.info("Resyncing watch of {} since {}", EtcdUtils.join(path), e.getEtcdCause());
+                    resync();
+                } else {
+                    LOG.warn("Watch of {} failed", EtcdUtils.join(path), e);
+                    pause();
+                }
+            } catch (Exception e) {
+                if (running) {
+                    LOG.warn("Watch of {} failed", EtcdUtils.join(path), e);
+                    pause();
+                }
+            }
+        }
+    }
+
+    private void resync() {
+        final Response read;
+        try {
+            read = etcdService.getResponseOrMissing(true, path);
+        } catch (Exception e) {
+            LOG.warn("Failed to resync watch of {}", EtcdUtils.join(path), e);
+            pause();
+            return;
+        }
+
+        waitIndex = read.getIndex() + 1;
+        final Response snapshot = EtcdService.isMissing(read) ? null : read;
+        for (WatchListener listener : listeners) {
+            try {
+                listener.onResync(snapshot);
+            } catch (RuntimeException e) {
+                LOG.warn("Watch listener failed to handle resync", e);
+            }
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RETRY_DELAY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps any number of expiring keys, such as service registrations, alive by refreshing each a few times
+ * within its TTL. Created by {@link EtcdService#createRefresher(RefresherSettings)}.
+ * <p>
+ * Rather than a timer per key, the keys are held in a hashed timing wheel that a single thread advances one
+ * tick at a time. The refreshes that fall due within a tick are sent together as one {@link EtcdBatch} over a
+ * small pool of connections, and a key that etcd reports as missing, such as after it expired during an
+ * outage, is re-created with its registered value.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/12/2015
+ */
+public class KeyRefresher implements Closeable {
+    private static Logger LOG = LoggerFactory.getLogger(KeyRefresher.class);
+
+    private final EtcdService etcdService;
+    private final long tickNanos;
+    private final int refreshesPerTtl;
+    private final long retryDelay;
+    private final BatchSettings batchSettings;
+    private final ExecutorService executor;
+    private final List<Entry>[] wheel;
+    private final int mask;
+    private final ConcurrentMap<String, Entry> registered = new ConcurrentHashMap<>();
+    /**
+     * Entries to be placed into the wheel, which only the ticker thread touches
+     */
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final Thread ticker;
+    private final long startNanos;
+    private volatile boolean running = true;
+    private long tick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    KeyRefresher(EtcdService etcdService, RefresherSettings settings) {
+        this.etcdService = etcdService;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, settings.getTickDuration()));
+        refreshesPerTtl = Math.max(1, settings.getRefreshesPerTtl());
+        retryDelay = settings.getRetryDelay();
+
+        batchSettings = new BatchSettings();
+        batchSettings.setConcurrency(Math.max(1, settings.getConcurrency()));
+        executor = Executors.newFixedThreadPool(batchSettings.getConcurrency(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "etcd-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final int size = Integer.highestOneBit(Math.max(1, settings.getWheelSize() - 1) << 1);
+        wheel = new List[size];
+        for (int i = 0; i < size; ++i) {
+            wheel[i] = new ArrayList<>();
+        }
+        mask = size - 1;
+
+        startNanos = System.nanoTime();
+        ticker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tickLoop();
+            }
+        }, "etcd-refresher");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Puts the key with the given TTL and keeps refreshing it until {@link #unregister(String...) unregistered}
+     * or this refresher is closed. Registering a key again replaces its value and TTL.
+     *
+     * @param ttl in seconds, which must be positive
+     */
+    public void register(String value, int ttl, String... path) throws IOException, EtcdException {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("A refreshed key requires a positive TTL");
+        }
+        etcdService.put(value, ttl, path);
+        schedule(new Entry(EtcdBatch.toKey(path), value, ttl), refreshDelay(ttl));
+    }
+
+    /**
+     * Keeps refreshing a key that already exists, such as one created by
+     * {@link EtcdService#putIfNotExists(String, int, String...)}. The first refresh is timed from the node's
+     * expiration.
+     *
+     * @param node the expiring node as retrieved from or returned by etcd
+     */
+    public void register(Node node) {
+        if (node.getTtl() <= 0) {
+            throw new IllegalArgumentException("Node does not expire: " + node.getKey());
+        }
+        long delay = refreshDelay(node.getTtl());
+        if (node.getExpiration() != null) {
+            final long remaining = node.getExpiration().getTime() - System.currentTimeMillis();
+            delay = Math.max(0, Math.min(delay, remaining - (TimeUnit.SECONDS.toMillis(node.getTtl()) - delay)));
+        }
+        schedule(new Entry(node.getKey(), node.getValue(), node.getTtl()), delay);
+    }
+
+    /**
+     * Stops refreshing the key and deletes it.
+     *
+     * @return false if the key wasn't registered
+     */
+    public boolean unregister(String... path) throws IOException, EtcdException {
+        final Entry entry = registered.remove(EtcdBatch.toKey(path));
+        if (entry == null) {
+            return false;
+        }
+        entry.cancelled = true;
+        try {
+            etcdService.deleteKey(entry.key);
+        } catch (EtcdException e) {
+            if (e.getEtcdError() != EtcdError.EcodeKeyNotFound) {
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    public boolean isRegistered(String... path) {
+        return registered.containsKey(EtcdBatch.toKey(path));
+    }
+
+    /**
+     * @return the number of keys being refreshed
+     */
+    public int size() {
+        return registered.size();
+    }
+
+    /**
+     * Stops refreshing. The registered keys are left in place and expire once their TTL runs out.
+     */
+    @Override
+    public void close() {
+        running = false;
+        ticker.interrupt();
+        executor.shutdownNow();
+    }
+
+    private long refreshDelay(int ttl) {
+        return TimeUnit.SECONDS.toMillis(ttl) / refreshesPerTtl;
+    }
+
+    private void schedule(Entry entry, long delay) {
+        final Entry replaced = registered.put(entry.key, entry);
+        if (replaced != null) {
+            replaced.cancelled = true;
+        }
+        reschedule(entry, delay);
+    }
+
+    private void reschedule(Entry entry, long delay) {
+        entry.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        pending.add(entry);
+    }
+
+    private void tickLoop() {
+        final List<Entry> due = new ArrayList<>();
+        while (running) {
+            final long sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+
+            placePending();
+            // catches up on any ticks that passed while the previous refreshes were sent
+            final long currentTick = (System.nanoTime() - startNanos) / tickNanos;
+            while (tick < currentTick) {
+                ++tick;
+                collectDue(wheel[(int) (tick & mask)], due);
+            }
+
+            if (!due.isEmpty()) {
+                try {
+                    refresh(due);
+                } catch (InterruptedException e) {
+                    continue;
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to refresh keys, retrying in {}ms", retryDelay, e);
+                    for (Entry entry : due) {
+                        reschedule(entry, retryDelay);
+                    }
+                } finally {
+                    due.clear();
+                }
+            }
+        }
+    }
+
+    private void placePending() {
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            if (entry.cancelled) {
+                continue;
+            }
+            final long dueTick = Math.max(tick + 1,
+                    (entry.dueNanos - startNanos + tickNanos - 1) / tickNanos);
+            entry.dueTick = dueTick;
+            wheel[(int) (dueTick & mask)].add(entry);
+        }
+    }
+
+    private void collectDue(List<Entry> slot, List<Entry> due) {
+        for (Iterator<Entry> it = slot.iterator(); it.hasNext(); ) {
+            final Entry entry = it.next();
+            if (entry.cancelled) {
+                it.remove();
+            } else if (entry.dueTick <= tick) {
+                it.remove();
+                due.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Reschedules the due entries only once every request has been answered, so that if any request throws,
+     * the caller can retry all of them without scheduling any twice.
+     */
+    private void refresh(List<Entry> due) throws InterruptedException {
+        final EtcdBatch refreshes = new EtcdBatch();
+        for (Entry entry : due) {
+            refreshes.refresh(entry.ttl, entry.key);
+        }
+        final List<BatchResult> results = etcdService.execute(refreshes, batchSettings, executor);
+
+        final List<Entry> refreshed = new ArrayList<>();
+        final List<Entry> retries = new ArrayList<>();
+        final List<Entry> lost = new ArrayList<>();
+        final EtcdBatch recreates = new EtcdBatch();
+        for (int i = 0; i < results.size(); ++i) {
+            final Entry entry = due.get(i);
+            final BatchResult result = results.get(i);
+            if (result.isSucceeded()) {
+                refreshed.add(entry);
+            } else if (result.getError() == EtcdError.EcodeKeyNotFound) {
+                if (!entry.cancelled) {
+                    lost.add(entry);
+                    recreates.put(entry.value, entry.ttl, entry.key);
+                }
+            } else {
+                LOG.warn("Failed to refresh {}: {}", entry.key, result);
+                retries.add(entry);
+            }
+        }
+
+        if (!lost.isEmpty()) {
+            final List<BatchResult> recreated = etcdService.execute(recreates, batchSettings, executor);
+            for (int i = 0; i < recreated.size(); ++i) {
+                final Entry entry = lost.get(i);
+                if (recreated.get(i).isSucceeded()) {
+                    LOG.info("Re-created expired key {}", entry.key);
+                    refreshed.add(entry);
+                } else {
+                    LOG.warn("Failed to re-create {}: {}", entry.key, recreated.get(i));
+                    retries.add(entry);
+                }
+            }
+        }
+
+        for (Entry entry : refreshed) {
+            reschedule(entry, refreshDelay(entry.ttl));
+        }
+        for (Entry entry : retries) {
+            reschedule(entry, retryDelay);
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final String value;
+        final int ttl;
+        volatile boolean cancelled;
+        volatile long dueNanos;
+        long dueTick;
+
+        Entry(String key, String value, int ttl) {
+            this.key = key;
+            this.value = value;
+            this.ttl = ttl;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package me.itzg.etcd;
+
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the URIs of the keys API with a single pass over the key path. The <code>/v2/keys</code> prefix of
+ * each machine is computed once up front and caller-provided path arrays are never modified.
+ * <p>
+ * The result matches what {@link org.springframework.web.util.UriComponentsBuilder} produced: repeated
+ * separators are collapsed and any character that isn't allowed in a path segment is percent-encoded
+ * as UTF-8.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/4/2015
+ */
+class KeyUris {
+    static final String KEYS_PATH = "/v2/keys";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final boolean[] PATH_SAFE = new boolean[128];
+    private static final boolean[] QUERY_SAFE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; ++c) {
+            PATH_SAFE[c] = QUERY_SAFE[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; ++c) {
+            PATH_SAFE[c] = QUERY_SAFE[c] = true;
+        }
+        for (char c = '0'; c <= '9'; ++c) {
+            PATH_SAFE[c] = QUERY_SAFE[c] = true;
+        }
+        for (char c : "-._~".toCharArray()) {
+            PATH_SAFE[c] = QUERY_SAFE[c] = true;
+        }
+        for (char c : "!$&'()*+,;=:@/".toCharArray()) {
+            PATH_SAFE[c] = true;
+        }
+    }
+
+    private final Map<URI, String> prefixes = new HashMap<>();
+
+    KeyUris(URI[] machines) {
+        for (URI machine : machines) {
+            prefixes.put(machine, keysPrefix(machine));
+        }
+    }
+
+    /**
+     * @param path  the path parts, each of which may contain separators
+     * @param query alternating query parameter names and values, where a pair with a null name is skipped
+     */
+    URI build(URI machine, String[] path, String... query) {
+        final StringBuilder sb = start(machine, 32);
+        for (String part : path) {
+            appendPath(sb, part);
+        }
+        return finish(sb, query);
+    }
+
+    /**
+     * @param key   a key path, such as <code>"/dir/key"</code>
+     * @param query alternating query parameter names and values
+     */
+    URI buildKey(URI machine, String key, String... query) {
+        final StringBuilder sb = start(machine, key.length());
+        appendPath(sb, key);
+        return finish(sb, query);
+    }
+
+    private StringBuilder start(URI machine, int expectedPathLength) {
+        String prefix = prefixes.get(machine);
+        if (prefix == null) {
+            prefix = keysPrefix(machine);
+        }
+        return new StringBuilder(prefix.length() + expectedPathLength + 16).append(prefix);
+    }
+
+    private static URI finish(StringBuilder sb, String[] query) {
+        boolean first = true;
+        for (int i = 0; i < query.length - 1; i += 2) {
+            if (query[i] == null) {
+                continue;
+            }
+            sb.append(first ? '?' : '&');
+            first = false;
+            appendEncoded(sb, query[i], QUERY_SAFE);
+            sb.append('=');
+            appendEncoded(sb, query[i + 1], QUERY_SAFE);
+        }
+        return URI.create(sb.toString());
+    }
+
+    /**
+     * Appends a separator and the given part, collapsing repeated separators along the way.
+     */
+    static void appendPath(StringBuilder sb, String part) {
+        if (sb.charAt(sb.length() - 1) != '/') {
+            sb.append('/');
+        }
+        final int length = part.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = part.charAt(i);
+            if (c == '/') {
+                if (sb.charAt(sb.length() - 1) != '/') {
+                    sb.append('/');
+                }
+            } else if (c < 128 && PATH_SAFE[c]) {
+                sb.append(c);
+            } else {
+                i = appendEscaped(sb, part, i);
+            }
+        }
+    }
+
+    static void appendEncoded(StringBuilder sb, String value, boolean[] safe) {
+        final int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = value.charAt(i);
+            if (c < 128 && safe[c]) {
+                sb.append(c);
+            } else {
+                i = appendEscaped(sb, value, i);
+            }
+        }
+    }
+
+    /**
+     * @return the index of the last char consumed, which is one further for a surrogate pair
+     */
+    private static int appendEscaped(StringBuilder sb, String value, int i) {
+        final char c = value.charAt(i);
+        if (c < 128) {
+            appendByte(sb, c);
+            return i;
+        }
+
+        final int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+        for (byte b : value.substring(i, end).getBytes(UTF_8)) {
+            appendByte(sb, b);
+        }
+        return end - 1;
+    }
+
+    private static void appendByte(StringBuilder sb, int b) {
+        sb.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    private static String keysPrefix(URI machine) {
+        final String base = machine.toString();
+        return (base.endsWith("/") ? base.substring(0, base.length() - 1) : base) + KEYS_PATH;
+    }
+}
@@ -0,0 +1,56 @@
+package me.itzg.etcd;
+
+import java.io.IOException;
+
+/**
+ * Elects one leader among any number of candidates by way of etcd. Created by
+ * {@link EtcdService#createLeaderElection(String, int, String...)}.
+ * <p>
+ * Candidates queue up in the order they {@link #campaign() campaign}, as with {@link EtcdLock}, so the
+ * leader is the earliest candidate that is still alive. When the leader resigns or stops refreshing its key,
+ * the next candidate in line takes over within the TTL.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/11/2015
+ */
+public class LeaderElection {
+    private final EtcdLock lock;
+
+    LeaderElection(EtcdService etcdService, String candidate, int ttl, String... path) {
+        lock = new EtcdLock(etcdService, candidate, ttl, path);
+    }
+
+    /**
+     * Joins the election and waits until this candidate is the leader.
+     */
+    public void campaign() throws IOException, EtcdException {
+        lock.lock();
+    }
+
+    /**
+     * Gives up the leadership, or leaves the election if still waiting, so the next candidate takes over.
+     */
+    public void resign() throws IOException, EtcdException {
+        lock.unlock();
+    }
+
+    public boolean isLeader() {
+        return lock.isHeld();
+    }
+
+    /**
+     * @return the name given by the current leader or null if there is none
+     */
+    public String getLeader() throws IOException, EtcdException {
+        return lock.getHolder();
+    }
+
+    /**
+     * @param revokedListener called on the heartbeat thread if the leadership was lost because this candidate's
+     *                        key expired, such as when etcd couldn't be reached for longer than the TTL
+     */
+    public void setRevokedListener(Runnable revokedListener) {
+        lock.setLostListener(revokedListener);
+    }
+}
@@ -0,0 +1,98 @@
+package me.itzg.etcd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically probes each machine's <code>/v2/stats/self</code> in the background. Machines that fail
+ * the probe are ejected, moving writes off them if they were sticking there, and those that answer are
+ * re-admitted, noting which one reports itself as leader.
+ * Created by {@link EtcdService#startHealthChecks(long)}.
+ * <p>
+ * The probes use their own connections with a short {@link #PROBE_TIMEOUT timeout}, rather than the service's
+ * transport, so a machine that stops answering can't hold up the probes of the others.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/2/2015
+ */
+public class MachineHealthChecker implements Closeable {
+    private static Logger LOG = LoggerFactory.getLogger(MachineHealthChecker.class);
+
+    static final String STATS_SELF_PATH = "/v2/stats/self";
+    static final String STATE_LEADER = "StateLeader";
+    /**
+     * In milliseconds, for both connecting and reading
+     */
+    static final int PROBE_TIMEOUT = 2000;
+
+    private final Machines machines;
+    private final RestOperations restOperations;
+    private final ScheduledExecutorService scheduler;
+
+    MachineHealthChecker(Machines machines, long interval) {
+        this.machines = machines;
+        this.restOperations = new RestTemplate(createProbeRequestFactory());
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "etcd-health-check");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probeAll();
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static SimpleClientHttpRequestFactory createProbeRequestFactory() {
+        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(PROBE_TIMEOUT);
+        requestFactory.setReadTimeout(PROBE_TIMEOUT);
+        return requestFactory;
+    }
+
+    void probeAll() {
+        for (URI machine : machines.getAll()) {
+            probe(machine);
+        }
+    }
+
+    private void probe(URI machine) {
+        try {
+            final Map<?, ?> stats = restOperations.getForObject(machine.resolve(STATS_SELF_PATH), Map.class);
+            final boolean leader = stats != null && STATE_LEADER.equals(stats.get("state"));
+            if (machines.isEjected(machine)) {
+                LOG.info("Re-admitting {}", machine);
+            }
+            machines.readmit(machine, leader);
+        } catch (RestClientException e) {
+            if (!machines.isEjected(machine)) {
+                LOG.info("Ejecting {} since health check failed: {}", machine, e.getMessage());
+            }
+            // and rotates writes away from it, just as a failed request would
+            machines.failover(machine, machines.sticky());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
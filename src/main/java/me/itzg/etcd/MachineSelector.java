@@ -0,0 +1,27 @@
+package me.itzg.etcd;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Chooses which etcd machine serves each read. Implementations are notified of every request so they can
+ * balance by load or latency. See {@link MachineSelectors} for the provided strategies.
+ *
+ * @author Geoff Bourne
+ * @since 7/2/2015
+ */
+public interface MachineSelector {
+    /**
+     * @param candidates the machines that are currently considered healthy, never empty
+     * @return one of the candidates
+     */
+    URI select(List<URI> candidates);
+
+    void requestStarted(URI machine);
+
+    /**
+     * @param elapsedNanos the duration of the request
+     * @param succeeded    false if the request failed to reach the machine or get a response
+     */
+    void requestCompleted(URI machine, long elapsedNanos, boolean succeeded);
+}
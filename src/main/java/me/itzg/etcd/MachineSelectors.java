@@ -0,0 +1,143 @@
+package me.itzg.etcd;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The provided {@link MachineSelector} strategies.
+ *
+ * @author Geoff Bourne
+ * @since 7/2/2015
+ */
+public final class MachineSelectors {
+    private MachineSelectors() {
+    }
+
+    /**
+     * @return a selector that spreads reads evenly across the healthy machines
+     */
+    public static MachineSelector roundRobin() {
+        return new RoundRobin();
+    }
+
+    /**
+     * @return a selector that sends each read to the machine with the fewest requests in flight
+     */
+    public static MachineSelector leastOutstanding() {
+        return new LeastOutstanding();
+    }
+
+    /**
+     * @param decay the weight, between 0 and 1, given to the newest latency sample
+     * @return a selector that favors the machine with the lowest exponentially weighted moving average
+     * of latency, scaled by its requests in flight so that a fast machine is not overloaded
+     */
+    public static MachineSelector latencyEwma(double decay) {
+        return new LatencyEwma(decay);
+    }
+
+    static class RoundRobin implements MachineSelector {
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public URI select(List<URI> candidates) {
+            return candidates.get((next.getAndIncrement() & Integer.MAX_VALUE) % candidates.size());
+        }
+
+        @Override
+        public void requestStarted(URI machine) {
+        }
+
+        @Override
+        public void requestCompleted(URI machine, long elapsedNanos, boolean succeeded) {
+        }
+    }
+
+    static class LeastOutstanding implements MachineSelector {
+        private final ConcurrentMap<URI, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+        /**
+         * Rotates where ties are broken so that idle machines share the load
+         */
+        private final AtomicInteger offset = new AtomicInteger();
+
+        @Override
+        public URI select(List<URI> candidates) {
+            final int size = candidates.size();
+            final int start = (offset.getAndIncrement() & Integer.MAX_VALUE) % size;
+            URI best = null;
+            double bestScore = Double.MAX_VALUE;
+            for (int i = 0; i < size; ++i) {
+                final URI candidate = candidates.get((start + i) % size);
+                final double score = score(candidate);
+                if (score < bestScore) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+
+        protected double score(URI machine) {
+            return outstanding(machine);
+        }
+
+        protected int outstanding(URI machine) {
+            final AtomicInteger count = outstanding.get(machine);
+            return count != null ? count.get() : 0;
+        }
+
+        @Override
+        public void requestStarted(URI machine) {
+            AtomicInteger count = outstanding.get(machine);
+            if (count == null) {
+                final AtomicInteger newCount = new AtomicInteger();
+                count = outstanding.putIfAbsent(machine, newCount);
+                if (count == null) {
+                    count = newCount;
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void requestCompleted(URI machine, long elapsedNanos, boolean succeeded) {
+            final AtomicInteger count = outstanding.get(machine);
+            if (count != null) {
+                count.decrementAndGet();
+            }
+        }
+    }
+
+    static class LatencyEwma extends LeastOutstanding {
+        private final double decay;
+        private final ConcurrentMap<URI, Double> averages = new ConcurrentHashMap<>();
+
+        LatencyEwma(double decay) {
+            if (decay <= 0 || decay > 1) {
+                throw new IllegalArgumentException("decay must be within (0, 1]");
+            }
+            this.decay = decay;
+        }
+
+        @Override
+        protected double score(URI machine) {
+            final Double average = averages.get(machine);
+            // unmeasured machines score zero so they get sampled
+            return average != null ? average * (outstanding(machine) + 1) : 0;
+        }
+
+        @Override
+        public void requestCompleted(URI machine, long elapsedNanos, boolean succeeded) {
+            super.requestCompleted(machine, elapsedNanos, succeeded);
+            if (!succeeded) {
+                return;
+            }
+            // racing updates may drop a sample, which is harmless for a moving average
+            final Double previous = averages.get(machine);
+            averages.put(machine, previous != null ? previous + decay * (elapsedNanos - previous) : (double) elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package me.itzg.etcd;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks the health of the etcd machines and picks the machine for each request. Writes stick to one machine,
+ * or the leader when known and requested, rotating when it becomes unreachable. Reads use the configured
+ * {@link MachineSelector} or otherwise follow writes.
+ * <p>
+ * Unreachable machines are ejected for {@link #setEjectionTime(long) a while} and then re-admitted.
+ * Shared by the blocking and asynchronous services so both follow the same failover semantics.
+ * </p>
+ * <p>
+ * The machine that writes stick to is held in an immutable {@link Sticky} that is replaced by compare-and-set.
+ * Callers take a snapshot before a request and pass it back on failure, so no matter how many concurrent
+ * requests observe the same failure, the snapshot is replaced only once. Selecting a machine is just a
+ * volatile read.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 6/28/2015
+ */
+class Machines {
+    /**
+     * The pooled transport's connect timeout, named rather than referenced since httpclient is optional
+     */
+    private static final String CONNECT_TIMEOUT_CLASS = "org.apache.http.conn.ConnectTimeoutException";
+
+    private final URI[] machines;
+    private final List<URI> allMachines;
+    private final Map<URI, MachineState> states = new HashMap<>();
+    private final AtomicReference<Sticky> sticky;
+
+    private volatile MachineSelector readSelector;
+    private volatile long ejectionTime = 30000;
+    private volatile boolean writesToLeader;
+
+    Machines(URI[] machines) {
+        if (machines.length == 0) {
+            throw new IllegalArgumentException("At least one machine is required");
+        }
+        for (URI machine : machines) {
+            states.put(machine, new MachineState());
+        }
+        this.machines = machines.clone();
+        allMachines = Collections.unmodifiableList(Arrays.asList(this.machines));
+        sticky = new AtomicReference<>(new Sticky(0, this.machines[0], 0));
+    }
+
+    int size() {
+        return machines.length;
+    }
+
+    List<URI> getAll() {
+        return allMachines;
+    }
+
+    /**
+     * @return a snapshot of the machine that writes stick to, to be passed back to
+     * {@link #failover(URI, Sticky)} if the request fails
+     */
+    Sticky sticky() {
+        return sticky.get();
+    }
+
+    URI forWrite(Sticky observed) {
+        if (writesToLeader) {
+            for (URI machine : machines) {
+                final MachineState state = states.get(machine);
+                if (state.leader && !state.isEjected()) {
+                    return machine;
+                }
+            }
+        }
+        return observed.machine;
+    }
+
+    URI forRead(Sticky observed) {
+        final MachineSelector selector = readSelector;
+        return selector != null ? selector.select(healthy()) : forWrite(observed);
+    }
+
+    MachineSelector getReadSelector() {
+        return readSelector;
+    }
+
+    void setReadSelector(MachineSelector readSelector) {
+        this.readSelector = readSelector;
+    }
+
+    void setEjectionTime(long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    void setWritesToLeader(boolean writesToLeader) {
+        this.writesToLeader = writesToLeader;
+    }
+
+    /**
+     * @return the machines that are not ejected or, if every machine is ejected, all of them since there
+     * is nothing better to try
+     */
+    List<URI> healthy() {
+        List<URI> healthy = null;
+        for (URI machine : machines) {
+            if (states.get(machine).isEjected()) {
+                if (healthy == null) {
+                    healthy = new ArrayList<>(allMachines);
+                }
+                healthy.remove(machine);
+            }
+        }
+        return healthy == null || healthy.isEmpty() ? allMachines : healthy;
+    }
+
+    boolean isEjected(URI machine) {
+        final MachineState state = states.get(machine);
+        return state != null && state.isEjected();
+    }
+
+    /**
+     * Ejects the given machine and, if writes were sticking to it as of the observed snapshot, rotates to the
+     * next healthy machine. Concurrent calls with the same snapshot rotate only once.
+     *
+     * @param failed   the machine that could not be reached
+     * @param observed the snapshot taken before the failed request
+     * @return true if this call moved writes off the failed machine
+     */
+    boolean failover(URI failed, Sticky observed) {
+        eject(failed);
+        if (!failed.equals(observed.machine)) {
+            return false;
+        }
+
+        int nextPos = observed.pos;
+        for (int i = 1; i <= machines.length; ++i) {
+            nextPos = (observed.pos + i) % machines.length;
+            if (!states.get(machines[nextPos]).isEjected()) {
+                break;
+            }
+        }
+        if (nextPos == observed.pos) {
+            // everything is ejected, so just move along
+            nextPos = (observed.pos + 1) % machines.length;
+        }
+
+        // a failed compare means another caller already rotated away from this snapshot
+        return sticky.compareAndSet(observed, new Sticky(nextPos, machines[nextPos], observed.epoch + 1));
+    }
+
+    /**
+     * @return true if the failure, or one of its causes, shows that the request never reached the machine, such
+     * as a refused or timed out connection, so that it is safe to retry on another machine. A read timeout
+     * isn't, since the machine may have applied the request.
+     */
+    static boolean isConnectFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+            if (cause instanceof InterruptedIOException && isConnectTimeout((InterruptedIOException) cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConnectTimeout(InterruptedIOException e) {
+        for (Class<?> type = e.getClass(); type != null; type = type.getSuperclass()) {
+            if (type.getName().equals(CONNECT_TIMEOUT_CLASS)) {
+                return true;
+            }
+        }
+        // HttpURLConnection tells its connect and read timeouts apart only by the message
+        final String message = e.getMessage();
+        return e instanceof SocketTimeoutException && message != null
+                && message.toLowerCase(Locale.ROOT).startsWith("connect timed out");
+    }
+
+    void eject(URI machine) {
+        final MachineState state = states.get(machine);
+        if (state != null) {
+            state.ejectedUntil = System.currentTimeMillis() + ejectionTime;
+            state.leader = false;
+        }
+    }
+
+    /**
+     * @param leader true if the machine reported itself as the cluster leader
+     */
+    void readmit(URI machine, boolean leader) {
+        final MachineState state = states.get(machine);
+        if (state != null) {
+            state.ejectedUntil = 0;
+            state.leader = leader;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the machine that writes stick to. The epoch counts the rotations so far.
+     */
+    static final class Sticky {
+        final int pos;
+        final URI machine;
+        final long epoch;
+
+        Sticky(int pos, URI machine, long epoch) {
+            this.pos = pos;
+            this.machine = machine;
+            this.epoch = epoch;
+        }
+    }
+
+    private static class MachineState {
+        volatile long ejectedUntil;
+        volatile boolean leader;
+
+        boolean isEjected() {
+            final long until = ejectedUntil;
+            return until != 0 && System.currentTimeMillis() < until;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+
+/**
+ * Receives the nodes of a {@link EtcdService#streamLeaves(NodeCallback, String...) streamed} read
+ * one at a time, as they are parsed.
+ *
+ * @author Geoff Bourne
+ * @since 7/8/2015
+ */
+public interface NodeCallback {
+    /**
+     * @param leaf a key that is not a directory. It is not retained after this call returns.
+     */
+    void onLeaf(Node leaf);
+}
@@ -0,0 +1,18 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+
+/**
+ * Computes the new value of a key for {@link EtcdService#compute(NodeUpdater, String...)}. It may be called
+ * several times for one compute, once per attempt, so it should have no side effects.
+ *
+ * @author Geoff Bourne
+ * @since 7/10/2015
+ */
+public interface NodeUpdater {
+    /**
+     * @param current the node as of this attempt or null if the key doesn't exist
+     * @return the new value or null to leave the key unchanged
+     */
+    String update(Node current);
+}
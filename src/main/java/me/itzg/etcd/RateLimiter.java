@@ -0,0 +1,45 @@
+package me.itzg.etcd;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spaces out permits evenly at a fixed rate. Each caller reserves the next free slot with a compare-and-set
+ * and then sleeps until it arrives, so callers never block each other.
+ *
+ * @author Geoff Bourne
+ * @since 7/7/2015
+ */
+class RateLimiter {
+    private final long intervalNanos;
+    private final AtomicLong nextFree;
+
+    /**
+     * @param permitsPerSecond must be positive
+     */
+    RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        nextFree = new AtomicLong(System.nanoTime());
+    }
+
+    void acquire() throws InterruptedException {
+        long slot;
+        while (true) {
+            final long now = System.nanoTime();
+            final long next = nextFree.get();
+            // an idle limiter doesn't accumulate a burst of permits
+            slot = next - now < 0 ? now : next;
+            if (nextFree.compareAndSet(next, slot + intervalNanos)) {
+                break;
+            }
+        }
+
+        final long wait = slot - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exposes the reads, conditional writes and watches of an {@link AsyncEtcdService} as Reactive Streams
+ * {@link Publisher}s, for use with any compliant library. Nothing is sent to etcd until a subscriber requests
+ * items, and each subscription sends its own requests.
+ * <p>
+ * A {@link #watch(long, boolean, String...) watch} long-polls only while its subscriber has unmet demand. A
+ * slow subscriber therefore throttles the polling instead of buffering events, and when it catches up the
+ * watch resumes from the index after the last delivered event, so no change is skipped.
+ * </p>
+ * <p>
+ * Requires <code>org.reactivestreams:reactive-streams</code> on the classpath.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/16/2015
+ */
+public class ReactiveEtcdService {
+    private final AsyncEtcdService asyncEtcdService;
+
+    /**
+     * @param asyncEtcdService performs the requests and remains the caller's to close
+     */
+    public ReactiveEtcdService(AsyncEtcdService asyncEtcdService) {
+        this.asyncEtcdService = asyncEtcdService;
+    }
+
+    /**
+     * @return a publisher of the node at the given path, which completes without an item if it doesn't exist
+     */
+    public Publisher<Node> get(final String... path) {
+        return new FetchPublisher<Node, Node>() {
+            @Override
+            protected ListenableFuture<Node> fetch() {
+                return asyncEtcdService.get(path);
+            }
+
+            @Override
+            protected List<Node> toItems(Node node) {
+                return node != null ? Collections.singletonList(node) : Collections.<Node>emptyList();
+            }
+        };
+    }
+
+    /**
+     * @param recursive if true, each child carries the nodes beneath it at every depth
+     * @return a publisher of the children of the directory at the given path, in etcd's order, which completes
+     * without an item if it doesn't exist
+     */
+    public Publisher<Node> list(final boolean recursive, final String... path) {
+        return new FetchPublisher<Response, Node>() {
+            @Override
+            protected ListenableFuture<Response> fetch() {
+                return asyncEtcdService.getResponse(recursive, path);
+            }
+
+            @Override
+            protected List<Node> toItems(Response response) {
+                if (response == null || response.getNode().getNodes() == null) {
+                    return Collections.emptyList();
+                }
+                return response.getNode().getNodes();
+            }
+        };
+    }
+
+    /**
+     * @return a publisher of true if the key was created or false if it already existed
+     */
+    public Publisher<Boolean> putIfNotExists(final String value, final String... path) {
+        return new ConditionPublisher() {
+            @Override
+            protected ListenableFuture<Boolean> fetch() {
+                return asyncEtcdService.putIfNotExists(value, path);
+            }
+        };
+    }
+
+    /**
+     * @param prevIndex the existing <code>modifiedIndex</code> of the node to update
+     * @return a publisher of true if the update was successful
+     */
+    public Publisher<Boolean> updateKeyAtomically(final String newValue, final long prevIndex, final String key) {
+        return new ConditionPublisher() {
+            @Override
+            protected ListenableFuture<Boolean> fetch() {
+                return asyncEtcdService.updateKeyAtomically(newValue, prevIndex, key);
+            }
+        };
+    }
+
+    /**
+     * @param previousValue the existing value of the node to update
+     * @return a publisher of true if the update was successful
+     */
+    public Publisher<Boolean> updateKeyAtomically(final String newValue, final String previousValue,
+                                                  final String key) {
+        return new ConditionPublisher() {
+            @Override
+            protected ListenableFuture<Boolean> fetch() {
+                return asyncEtcdService.updateKeyAtomically(newValue, previousValue, key);
+            }
+        };
+    }
+
+    /**
+     * @param prevIndex the existing <code>modifiedIndex</code> of the node to delete
+     * @return a publisher of true if the delete was successful
+     */
+    public Publisher<Boolean> deleteKeyAtomically(final String key, final long prevIndex) {
+        return new ConditionPublisher() {
+            @Override
+            protected ListenableFuture<Boolean> fetch() {
+                return asyncEtcdService.deleteKeyAtomically(key, prevIndex);
+            }
+        };
+    }
+
+    /**
+     * Publishes each change of the given path, in order and without end until cancelled.
+     * <p>
+     * If etcd has cleared the history needed to resume, such as after a subscriber fell more than etcd's
+     * event history behind, the publisher fails with a {@link ClientEtcdException} of
+     * {@link EtcdError#EcodeEventIndexCleared}. The subscriber can then re-read the subtree and subscribe
+     * again from one after the index of that read.
+     * </p>
+     *
+     * @param fromIndex the index of the earliest change to publish, typically one after the index of a
+     *                  previous read, or zero for changes made after the subscriber first requests any
+     * @param recursive if true, changes to any node beneath the given path are also published
+     */
+    public Publisher<Response> watch(final long fromIndex, final boolean recursive, final String... path) {
+        return new Publisher<Response>() {
+            @Override
+            public void subscribe(Subscriber<? super Response> subscriber) {
+                new WatchSubscription(subscriber, fromIndex, recursive, path).start();
+            }
+        };
+    }
+
+    /**
+     * Publishes the items of a single request, sent once the subscriber first requests any.
+     */
+    private abstract static class FetchPublisher<R, T> implements Publisher<T> {
+        protected abstract ListenableFuture<R> fetch();
+
+        protected abstract List<T> toItems(R result);
+
+        @Override
+        public void subscribe(Subscriber<? super T> subscriber) {
+            new DemandSubscription<T>(subscriber) {
+                private volatile ListenableFuture<R> future;
+
+                @Override
+                protected void fetch() {
+                    if (future != null) {
+                        return;
+                    }
+                    future = FetchPublisher.this.fetch();
+                    future.addCallback(new ListenableFutureCallback<R>() {
+                        @Override
+                        public void onSuccess(R result) {
+                            for (T item : toItems(result)) {
+                                emit(item);
+                            }
+                            complete();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable ex) {
+                            fail(ex);
+                        }
+                    });
+                }
+
+                @Override
+                protected void onCancel() {
+                    final ListenableFuture<R> inFlight = future;
+                    if (inFlight != null) {
+                        inFlight.cancel(true);
+                    }
+                }
+            }.start();
+        }
+    }
+
+    private abstract static class ConditionPublisher extends FetchPublisher<Boolean, Boolean> {
+        @Override
+        protected List<Boolean> toItems(Boolean result) {
+            return Collections.singletonList(result);
+        }
+    }
+
+    /**
+     * Keeps at most one long-poll outstanding, and only while the subscriber wants more events.
+     */
+    private class WatchSubscription extends DemandSubscription<Response> {
+        private final boolean recursive;
+        private final String[] path;
+        private volatile long waitIndex;
+        private volatile ListenableFuture<Response> poll;
+
+        WatchSubscription(Subscriber<? super Response> subscriber, long fromIndex, boolean recursive,
+                          String[] path) {
+            super(subscriber);
+            this.waitIndex = fromIndex;
+            this.recursive = recursive;
+            this.path = path.clone();
+        }
+
+        @Override
+        protected void fetch() {
+            if (poll != null) {
+                return;
+            }
+            if (waitIndex == 0) {
+                resolveIndex();
+                return;
+            }
+            final ListenableFuture<Response> started = asyncEtcdService.waitForChange(waitIndex, recursive, path);
+            poll = started;
+            started.addCallback(new ListenableFutureCallback<Response>() {
+                @Override
+                public void onSuccess(Response event) {
+                    poll = null;
+                    if (event == null) {
+                        // read timeout, so poll again if still wanted
+                        drain();
+                        return;
+                    }
+                    waitIndex = event.getNode().getModifiedIndex() + 1;
+                    emit(event);
+                }
+
+                @Override
+                public void onFailure(Throwable ex) {
+                    poll = null;
+                    if (!isCancelled()) {
+                        fail(ex);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Reads the current index to poll from, since polling again with an index of zero after a read timeout
+         * would skip the changes made between the polls
+         */
+        private void resolveIndex() {
+            final ListenableFuture<Response> started = asyncEtcdService.getResponseOrMissing(false, path);
+            poll = started;
+            started.addCallback(new ListenableFutureCallback<Response>() {
+                @Override
+                public void onSuccess(Response current) {
+                    waitIndex = current.getIndex() + 1;
+                    poll = null;
+                    drain();
+                }
+
+                @Override
+                public void onFailure(Throwable ex) {
+                    poll = null;
+                    if (!isCancelled()) {
+                        fail(ex);
+                    }
+                }
+            });
+        }
+
+        @Override
+        protected void onCancel() {
+            final ListenableFuture<Response> inFlight = poll;
+            if (inFlight != null) {
+                inFlight.cancel(true);
+            }
+        }
+    }
+}
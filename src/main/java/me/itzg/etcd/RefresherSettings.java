@@ -0,0 +1,75 @@
+package me.itzg.etcd;
+
+/**
+ * Configures a {@link KeyRefresher}.
+ *
+ * @author Geoff Bourne
+ * @since 7/12/2015
+ */
+public class RefresherSettings {
+    private long tickDuration = 100;
+    private int wheelSize = 512;
+    private int refreshesPerTtl = 3;
+    private long retryDelay = 1000;
+    private int concurrency = 4;
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * @param tickDuration in milliseconds, the resolution of the timing wheel. Refreshes that fall due within
+     *                     the same tick are sent together.
+     */
+    public void setTickDuration(long tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    public int getWheelSize() {
+        return wheelSize;
+    }
+
+    /**
+     * @param wheelSize the number of slots in the timing wheel, rounded up to a power of two. Keys due further
+     *                  out than one revolution wait in their slot for the later pass.
+     */
+    public void setWheelSize(int wheelSize) {
+        this.wheelSize = wheelSize;
+    }
+
+    public int getRefreshesPerTtl() {
+        return refreshesPerTtl;
+    }
+
+    /**
+     * @param refreshesPerTtl how many times each key is refreshed within its TTL, so that a few failed
+     *                        refreshes in a row don't let it expire
+     */
+    public void setRefreshesPerTtl(int refreshesPerTtl) {
+        this.refreshesPerTtl = refreshesPerTtl;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @param retryDelay in milliseconds after which a refresh that failed, such as when etcd wasn't reachable,
+     *                   is tried again
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param concurrency the number of refreshes in flight at once, each on its own pooled connection
+     * @see BatchSettings#setConcurrency(int)
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+}
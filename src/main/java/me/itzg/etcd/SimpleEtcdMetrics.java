@@ -0,0 +1,208 @@
+package me.itzg.etcd;
+
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the metrics in memory using only atomic counters, so recording never blocks. Latencies are
+ * recorded into a histogram with power-of-two microsecond buckets, which bounds percentiles to within
+ * a factor of two.
+ *
+ * @author Geoff Bourne
+ * @since 7/6/2015
+ */
+public class SimpleEtcdMetrics implements EtcdMetrics {
+    /**
+     * Bucket <code>i</code> holds latencies below <code>2^i</code> microseconds and the last bucket
+     * holds the rest, so 24 buckets span up to about 8 seconds.
+     */
+    static final int BUCKETS = 24;
+
+    private final Map<EtcdOperation, OperationStats> operations = new EnumMap<>(EtcdOperation.class);
+    private final ConcurrentMap<URI, AtomicLong> machineErrors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<URI, AtomicLong> failovers = new ConcurrentHashMap<>();
+
+    public SimpleEtcdMetrics() {
+        for (EtcdOperation operation : EtcdOperation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+    }
+
+    @Override
+    public void operationStarted(EtcdOperation operation) {
+        operations.get(operation).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void operationCompleted(EtcdOperation operation, long elapsedNanos, boolean succeeded) {
+        final OperationStats stats = operations.get(operation);
+        stats.inFlight.decrementAndGet();
+        if (!succeeded) {
+            stats.failures.incrementAndGet();
+        }
+        stats.buckets.incrementAndGet(bucketOf(elapsedNanos));
+        stats.totalNanos.addAndGet(elapsedNanos);
+    }
+
+    @Override
+    public void conditionCompleted(EtcdOperation operation, boolean applied) {
+        final OperationStats stats = operations.get(operation);
+        (applied ? stats.applied : stats.conflicts).incrementAndGet();
+    }
+
+    @Override
+    public void machineError(URI machine, Throwable cause) {
+        counterOf(machineErrors, machine).incrementAndGet();
+    }
+
+    @Override
+    public void failover(URI machine) {
+        counterOf(failovers, machine).incrementAndGet();
+    }
+
+    public LatencyHistogram getLatency(EtcdOperation operation) {
+        final OperationStats stats = operations.get(operation);
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = stats.buckets.get(i);
+        }
+        return new LatencyHistogram(counts, stats.totalNanos.get());
+    }
+
+    /**
+     * @return the number of operations started and not yet completed
+     */
+    public long getInFlight(EtcdOperation operation) {
+        return operations.get(operation).inFlight.get();
+    }
+
+    /**
+     * @return the number of operations that completed with an exception
+     */
+    public long getFailures(EtcdOperation operation) {
+        return operations.get(operation).failures.get();
+    }
+
+    public long getConditionApplied(EtcdOperation operation) {
+        return operations.get(operation).applied.get();
+    }
+
+    public long getConditionConflicts(EtcdOperation operation) {
+        return operations.get(operation).conflicts.get();
+    }
+
+    /**
+     * @return the fraction of the conditional operations that found their precondition didn't hold,
+     * or zero if there were none
+     */
+    public double getConflictRatio(EtcdOperation operation) {
+        final long conflicts = getConditionConflicts(operation);
+        final long total = conflicts + getConditionApplied(operation);
+        return total > 0 ? (double) conflicts / total : 0;
+    }
+
+    public long getMachineErrors(URI machine) {
+        final AtomicLong counter = machineErrors.get(machine);
+        return counter != null ? counter.get() : 0;
+    }
+
+    public long getFailovers(URI machine) {
+        final AtomicLong counter = failovers.get(machine);
+        return counter != null ? counter.get() : 0;
+    }
+
+    static int bucketOf(long elapsedNanos) {
+        final long micros = elapsedNanos / 1000;
+        // the number of bits needed to represent the micros, so 0 is bucket 0 and 1 is bucket 1
+        final int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static AtomicLong counterOf(ConcurrentMap<URI, AtomicLong> counters, URI machine) {
+        AtomicLong counter = counters.get(machine);
+        if (counter == null) {
+            final AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(machine, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * A point-in-time copy of the latencies recorded for an operation.
+     */
+    public static class LatencyHistogram {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+
+        LatencyHistogram(long[] counts, long totalNanos) {
+            this.counts = counts;
+            this.totalNanos = totalNanos;
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+            this.count = count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return the mean latency in nanoseconds or zero if nothing was recorded
+         */
+        public long getMeanNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+
+        /**
+         * @param percentile such as 0.99
+         * @return the upper bound in nanoseconds of the bucket containing the given percentile or
+         * zero if nothing was recorded
+         */
+        public long getPercentileNanos(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return (1L << i) * 1000;
+                }
+            }
+            return (1L << (counts.length - 1)) * 1000;
+        }
+
+        /**
+         * @return the count of each bucket, where bucket <code>i</code> holds latencies below
+         * <code>2^i</code> microseconds
+         */
+        public long[] getBucketCounts() {
+            return counts.clone();
+        }
+    }
+
+    private static class OperationStats {
+        final AtomicLong inFlight = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong applied = new AtomicLong();
+        final AtomicLong conflicts = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final AtomicLong totalNanos = new AtomicLong();
+    }
+}
@@ -0,0 +1,46 @@
+package me.itzg.etcd;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Lets concurrent callers asking for the same key share a single call, so that a burst of identical requests
+ * reaches etcd only once. Callers arriving after the call completes start a new one.
+ *
+ * @author Geoff Bourne
+ * @since 7/13/2015
+ */
+class SingleFlight<K, V> {
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the call on the current thread, unless another thread is already running one for the same key,
+     * in which case this waits for and returns its outcome.
+     *
+     * @throws ExecutionException wrapping whatever the shared call threw
+     */
+    V execute(K key, Callable<V> call) throws ExecutionException, InterruptedException {
+        final FutureTask<V> task = new FutureTask<>(call);
+        final FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+        if (existing != null) {
+            return existing.get();
+        }
+
+        try {
+            task.run();
+        } finally {
+            inFlight.remove(key, task);
+        }
+        return task.get();
+    }
+
+    /**
+     * @return the number of calls currently in flight
+     */
+    int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,125 @@
+package me.itzg.etcd;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import me.itzg.etcd.keys.Node;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Parses an etcd keys response incrementally, handing each leaf node to a callback as soon as it has been
+ * parsed. Only the directories enclosing the current node are held, so memory use depends on the depth of
+ * the tree rather than its size.
+ *
+ * @author Geoff Bourne
+ * @since 7/8/2015
+ */
+class StreamingNodeReader {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final NodeCallback callback;
+    private final DateFormat dateFormat = new StdDateFormat();
+    private int leafCount;
+
+    StreamingNodeReader(NodeCallback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * @return the number of leaves passed to the callback
+     */
+    int read(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                if ("node".equals(field) && token == JsonToken.START_OBJECT) {
+                    readNode(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return leafCount;
+    }
+
+    /**
+     * Reads the node whose START_OBJECT is the current token, recursing into its children.
+     */
+    private void readNode(JsonParser parser) throws IOException {
+        final Node node = new Node();
+        boolean hasChildren = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            switch (field) {
+                case "key":
+                    node.setKey(parser.getValueAsString());
+                    break;
+                case "value":
+                    node.setValue(parser.getValueAsString());
+                    break;
+                case "dir":
+                    node.setDir(parser.getValueAsBoolean());
+                    break;
+                case "ttl":
+                    node.setTtl(parser.getValueAsInt());
+                    break;
+                case "modifiedIndex":
+                    node.setModifiedIndex(parser.getValueAsLong());
+                    break;
+                case "createdIndex":
+                    node.setCreatedIndex(parser.getValueAsLong());
+                    break;
+                case "expiration":
+                    node.setExpiration(parseDate(parser));
+                    break;
+                case "nodes":
+                    if (token == JsonToken.START_ARRAY) {
+                        hasChildren = true;
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            readNode(parser);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (!node.isDir() && !hasChildren) {
+            ++leafCount;
+            callback.onLeaf(node);
+        }
+    }
+
+    private Date parseDate(JsonParser parser) throws IOException {
+        final String text = parser.getValueAsString();
+        if (text == null) {
+            return null;
+        }
+        try {
+            return dateFormat.parse(text);
+        } catch (ParseException e) {
+            throw new JsonParseException("Invalid expiration: " + text, parser.getCurrentLocation(), e);
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("Expected " + expected + " but was " + actual,
+                    parser.getCurrentLocation());
+        }
+    }
+}
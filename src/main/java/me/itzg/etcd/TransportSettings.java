@@ -0,0 +1,222 @@
+package me.itzg.etcd;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures a pooled, keep-alive HTTP transport for {@link EtcdService}. Connections are kept open
+ * per machine URI and reused across calls rather than paying connection setup on every request.
+ * <p>
+ * Requires <code>org.apache.httpcomponents:httpclient</code> on the classpath and, for
+ * {@link AsyncEtcdService}, <code>org.apache.httpcomponents:httpasyncclient</code>.
+ * </p>
+ * <p>
+ * The blocking transport suits callers running on virtual threads: its pool hands out connections under
+ * <code>java.util.concurrent</code> locks and waits by parking, and reads block on the socket, none of
+ * which pins a virtual thread to its carrier. See {@link #forVirtualThreads()}.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 6/27/2015
+ */
+public class TransportSettings {
+    private int maxConnections = 50;
+    private int maxConnectionsPerMachine = 20;
+    private int connectTimeout = 2000;
+    private int readTimeout = 30000;
+    private int connectionRequestTimeout = 0;
+    private long maxIdleTime = 60000;
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections the total number of pooled connections across all machines
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerMachine() {
+        return maxConnectionsPerMachine;
+    }
+
+    /**
+     * @param maxConnectionsPerMachine the number of pooled connections allowed to any one machine URI
+     */
+    public void setMaxConnectionsPerMachine(int maxConnectionsPerMachine) {
+        this.maxConnectionsPerMachine = maxConnectionsPerMachine;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout in milliseconds, where zero means no timeout
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @param readTimeout in milliseconds, where zero means no timeout
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * @param connectionRequestTimeout in milliseconds to wait for a pooled connection once all of a machine's
+     *                                 connections are in use, where zero means no timeout
+     */
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * @param maxIdleTime in milliseconds that a pooled connection can sit unused before it is evicted.
+     *                    Zero disables idle eviction.
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * @param ioThreads the number of I/O dispatch threads used by the non-blocking transport
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * @return settings for a service called from many virtual threads at once. The pool is sized so that
+     * thousands of concurrent calls share a few hundred connections, with the rest parked waiting for one,
+     * and that wait is bounded by the read timeout rather than unbounded.
+     */
+    public static TransportSettings forVirtualThreads() {
+        final TransportSettings settings = new TransportSettings();
+        settings.setMaxConnections(400);
+        settings.setMaxConnectionsPerMachine(200);
+        settings.setConnectionRequestTimeout(settings.getReadTimeout());
+        return settings;
+    }
+
+    /**
+     * @return a new request factory backed by its own connection pool. The caller is responsible
+     * for destroying it, which {@link EtcdService#close()} does when given these settings.
+     */
+    public ClientHttpRequestFactory createRequestFactory() {
+        final RequestConfig requestConfig = createRequestConfig();
+        final HttpComponentsClientHttpRequestFactory requestFactory =
+                new HttpComponentsClientHttpRequestFactory(createHttpClient()) {
+                    @Override
+                    protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+                        // otherwise the factory replaces the client's request config with just its two timeouts
+                        final HttpClientContext context = HttpClientContext.create();
+                        context.setRequestConfig(requestConfig);
+                        return context;
+                    }
+                };
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        return requestFactory;
+    }
+
+    /**
+     * @return a new non-blocking request factory backed by its own connection pool and I/O threads.
+     * The caller is responsible for destroying it, which {@link AsyncEtcdService#close()} does when given
+     * these settings.
+     */
+    public AsyncClientHttpRequestFactory createAsyncRequestFactory() {
+        final HttpComponentsAsyncClientHttpRequestFactory requestFactory =
+                new HttpComponentsAsyncClientHttpRequestFactory(createHttpAsyncClient());
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        return requestFactory;
+    }
+
+    protected CloseableHttpClient createHttpClient() {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerMachine);
+
+        final HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(createRequestConfig())
+                .disableCookieManagement();
+        if (maxIdleTime > 0) {
+            builder.evictExpiredConnections()
+                    .evictIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+        }
+
+        return builder.build();
+    }
+
+    protected CloseableHttpAsyncClient createHttpAsyncClient() {
+        final HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerMachine)
+                .setDefaultRequestConfig(createRequestConfig())
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(ioThreads)
+                        .setConnectTimeout(connectTimeout)
+                        .build())
+                .disableCookieManagement();
+        if (maxIdleTime > 0) {
+            // the non-blocking pool has no idle evictor, so cap how long a connection may be kept alive instead
+            builder.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                    final long duration = super.getKeepAliveDuration(response, context);
+                    return duration > 0 && duration < maxIdleTime ? duration : maxIdleTime;
+                }
+            });
+        }
+
+        return builder.build();
+    }
+
+    protected RequestConfig createRequestConfig() {
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .build();
+    }
+}
@@ -0,0 +1,26 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Response;
+
+/**
+ * Receives the changes reported by an {@link EtcdWatch}. Callbacks are invoked in order on the watch's thread,
+ * so they should return promptly.
+ *
+ * @author Geoff Bourne
+ * @since 6/30/2015
+ */
+public interface WatchListener {
+    /**
+     * @param event a single change, where the action is one such as <code>set</code>, <code>delete</code>,
+     *              or <code>compareAndSwap</code> and the node is the changed node
+     */
+    void onEvent(Response event);
+
+    /**
+     * Invoked when etcd could not report every change since the last event, such as when its event history
+     * was cleared. Any state derived from prior events should be replaced with the given snapshot.
+     *
+     * @param snapshot the current, recursive state of the watched path or null if it no longer exists
+     */
+    void onResync(Response snapshot);
+}
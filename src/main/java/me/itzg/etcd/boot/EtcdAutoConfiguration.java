@@ -0,0 +1,140 @@
+package me.itzg.etcd.boot;
+
+import me.itzg.etcd.ComputeSettings;
+import me.itzg.etcd.EtcdCache;
+import me.itzg.etcd.EtcdMetrics;
+import me.itzg.etcd.EtcdService;
+import me.itzg.etcd.MachineSelectors;
+import me.itzg.etcd.SimpleEtcdMetrics;
+import me.itzg.etcd.TransportSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ClassUtils;
+
+import java.net.URI;
+
+/**
+ * Offers an {@link EtcdService} configured from the {@link EtcdProperties etcd.*} properties, along with
+ * {@link SimpleEtcdMetrics}, an {@link EtcdCache} when <code>etcd.cache.prefix</code> is set and, with the
+ * actuator present, an etcd health indicator and metrics. Any of these declared by the application is used
+ * instead.
+ *
+ * @author Geoff Bourne
+ * @since 7/17/2015
+ */
+@Configuration
+@EnableConfigurationProperties(EtcdProperties.class)
+public class EtcdAutoConfiguration {
+    private static final String POOLED_TRANSPORT_CLASS = "org.apache.http.impl.client.HttpClientBuilder";
+
+    @Autowired
+    private EtcdProperties properties;
+
+    @Autowired(required = false)
+    private EtcdMetrics metrics;
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public EtcdService etcdService() {
+        final EtcdService etcdService;
+        if (ClassUtils.isPresent(POOLED_TRANSPORT_CLASS, EtcdAutoConfiguration.class.getClassLoader())) {
+            etcdService = PooledTransport.createService(properties.getMachines(), properties.getTransport());
+        } else {
+            etcdService = new EtcdService(properties.getMachines());
+        }
+
+        etcdService.setMetrics(metrics);
+        etcdService.setEjectionTime(properties.getEjectionTime());
+        etcdService.setWritesToLeader(properties.isWritesToLeader());
+        etcdService.setCoalesceReads(properties.isCoalesceReads());
+        etcdService.setDirCacheSize(properties.getDirCacheSize());
+        switch (properties.getReadSelector()) {
+            case ROUND_ROBIN:
+                etcdService.setReadSelector(MachineSelectors.roundRobin());
+                break;
+            case LEAST_OUTSTANDING:
+                etcdService.setReadSelector(MachineSelectors.leastOutstanding());
+                break;
+            case LATENCY_EWMA:
+                etcdService.setReadSelector(MachineSelectors.latencyEwma(properties.getLatencyDecay()));
+                break;
+            default:
+                etcdService.setReadSelector(null);
+        }
+        if (properties.getHealthCheckInterval() > 0) {
+            etcdService.startHealthChecks(properties.getHealthCheckInterval());
+        }
+        return etcdService;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnExpression("'${etcd.cache.prefix:}' != ''")
+    public EtcdCache etcdCache(EtcdService etcdService) {
+        return new EtcdCache(etcdService, properties.getCache(), properties.getCache().getPrefix());
+    }
+
+    /**
+     * @return the retry budget to pass to {@link EtcdService#compute(ComputeSettings, me.itzg.etcd.NodeUpdater,
+     * String...)}
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public ComputeSettings etcdComputeSettings() {
+        return properties.getRetry();
+    }
+
+    /**
+     * Only loaded once <code>httpclient</code> is known to be present, since {@link TransportSettings} needs it
+     */
+    private static class PooledTransport {
+        static EtcdService createService(URI[] machines, EtcdProperties.Transport transport) {
+            final TransportSettings settings = new TransportSettings();
+            settings.setMaxConnections(transport.getMaxConnections());
+            settings.setMaxConnectionsPerMachine(transport.getMaxConnectionsPerMachine());
+            settings.setConnectTimeout(transport.getConnectTimeout());
+            settings.setReadTimeout(transport.getReadTimeout());
+            settings.setConnectionRequestTimeout(transport.getConnectionRequestTimeout());
+            settings.setMaxIdleTime(transport.getMaxIdleTime());
+            settings.setIoThreads(transport.getIoThreads());
+            return new EtcdService(machines, settings);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnExpression("${etcd.metrics-enabled:true}")
+    protected static class MetricsConfiguration {
+        @Bean
+        @ConditionalOnMissingBean(EtcdMetrics.class)
+        public SimpleEtcdMetrics etcdMetrics() {
+            return new SimpleEtcdMetrics();
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(HealthIndicator.class)
+    protected static class ActuatorConfiguration {
+        @Autowired(required = false)
+        private EtcdCache etcdCache;
+
+        @Bean
+        @ConditionalOnMissingBean(name = "etcdHealthIndicator")
+        public HealthIndicator etcdHealthIndicator(EtcdService etcdService) {
+            return new EtcdHealthIndicator(etcdService);
+        }
+
+        @Bean
+        @ConditionalOnClass(PublicMetrics.class)
+        @ConditionalOnMissingBean(name = "etcdPublicMetrics")
+        public PublicMetrics etcdPublicMetrics(EtcdService etcdService) {
+            return new EtcdPublicMetrics(etcdService, etcdCache);
+        }
+    }
+}
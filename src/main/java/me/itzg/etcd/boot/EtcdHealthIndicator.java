@@ -0,0 +1,38 @@
+package me.itzg.etcd.boot;
+
+import me.itzg.etcd.EtcdService;
+import me.itzg.etcd.keys.Response;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports etcd as up if the root directory can be read from any machine, along with the current etcd index
+ * and which machines are being avoided as unreachable.
+ *
+ * @author Geoff Bourne
+ * @since 7/17/2015
+ */
+public class EtcdHealthIndicator extends AbstractHealthIndicator {
+    private final EtcdService etcdService;
+
+    public EtcdHealthIndicator(EtcdService etcdService) {
+        this.etcdService = etcdService;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        final Response root = etcdService.getResponse(false, EtcdService.SEP);
+
+        final Map<String, String> machines = new LinkedHashMap<>();
+        for (URI machine : etcdService.getMachines()) {
+            machines.put(machine.toString(), etcdService.isEjected(machine) ? "ejected" : "available");
+        }
+        builder.up()
+                .withDetail("index", root != null ? root.getIndex() : 0)
+                .withDetail("machines", machines);
+    }
+}
@@ -0,0 +1,252 @@
+package me.itzg.etcd.boot;
+
+import me.itzg.etcd.CacheSettings;
+import me.itzg.etcd.ComputeSettings;
+import me.itzg.etcd.EtcdService;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.URI;
+
+/**
+ * The <code>etcd.*</code> properties of the {@link EtcdAutoConfiguration}. The nested <code>cache</code> and
+ * <code>retry</code> groups bind directly onto the library's own settings, so they take the same names and
+ * defaults. The <code>transport</code> group mirrors {@link me.itzg.etcd.TransportSettings}, such as
+ * <code>etcd.transport.max-connections-per-machine</code>, but is kept apart from it since that class needs
+ * <code>org.apache.httpcomponents:httpclient</code>, which is optional.
+ *
+ * @author Geoff Bourne
+ * @since 7/17/2015
+ */
+@ConfigurationProperties(prefix = "etcd")
+public class EtcdProperties {
+    private URI[] machines = {URI.create("http://127.0.0.1:2379")};
+    private final Transport transport = new Transport();
+    private final Cache cache = new Cache();
+    private final ComputeSettings retry = new ComputeSettings();
+    private long ejectionTime = 30000;
+    private long healthCheckInterval;
+    private boolean writesToLeader;
+    private ReadSelector readSelector = ReadSelector.NONE;
+    private double latencyDecay = 0.2;
+    private boolean coalesceReads;
+    private int dirCacheSize = 1024;
+    private boolean metricsEnabled = true;
+
+    public URI[] getMachines() {
+        return machines;
+    }
+
+    /**
+     * @param machines the client URLs of the etcd cluster, given comma separated in a properties file
+     */
+    public void setMachines(URI[] machines) {
+        this.machines = machines;
+    }
+
+    /**
+     * @return the pooled transport, which applies when <code>org.apache.httpcomponents:httpclient</code> is on
+     * the classpath
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the bounds of the {@link me.itzg.etcd.EtcdCache}, which is only created when given a prefix
+     */
+    public Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the attempts and backoff for {@link EtcdService#compute(ComputeSettings,
+     * me.itzg.etcd.NodeUpdater, String...) compute}, offered as a {@link ComputeSettings} bean
+     */
+    public ComputeSettings getRetry() {
+        return retry;
+    }
+
+    public long getEjectionTime() {
+        return ejectionTime;
+    }
+
+    /**
+     * @param ejectionTime in milliseconds that an unreachable machine is avoided before being tried again
+     */
+    public void setEjectionTime(long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    public long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * @param healthCheckInterval in milliseconds between background probes of each machine, where zero, the
+     *                            default, disables them
+     */
+    public void setHealthCheckInterval(long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    public boolean isWritesToLeader() {
+        return writesToLeader;
+    }
+
+    /**
+     * @param writesToLeader if true, writes are sent to the leader found by the health checks
+     */
+    public void setWritesToLeader(boolean writesToLeader) {
+        this.writesToLeader = writesToLeader;
+    }
+
+    public ReadSelector getReadSelector() {
+        return readSelector;
+    }
+
+    /**
+     * @param readSelector how reads are spread across the machines
+     */
+    public void setReadSelector(ReadSelector readSelector) {
+        this.readSelector = readSelector;
+    }
+
+    public double getLatencyDecay() {
+        return latencyDecay;
+    }
+
+    /**
+     * @param latencyDecay the weight given to the newest sample by {@link ReadSelector#LATENCY_EWMA}
+     */
+    public void setLatencyDecay(double latencyDecay) {
+        this.latencyDecay = latencyDecay;
+    }
+
+    public boolean isCoalesceReads() {
+        return coalesceReads;
+    }
+
+    /**
+     * @param coalesceReads if true, concurrent reads of the same key share a single request
+     */
+    public void setCoalesceReads(boolean coalesceReads) {
+        this.coalesceReads = coalesceReads;
+    }
+
+    public int getDirCacheSize() {
+        return dirCacheSize;
+    }
+
+    /**
+     * @param dirCacheSize the number of directories remembered as existing by
+     *                     {@link EtcdService#ensureDir(String...)}
+     */
+    public void setDirCacheSize(int dirCacheSize) {
+        this.dirCacheSize = dirCacheSize;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * @param metricsEnabled if true, the default, operations are measured and published as actuator metrics
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * The properties of {@link me.itzg.etcd.TransportSettings}, with the same defaults
+     */
+    public static class Transport {
+        private int maxConnections = 50;
+        private int maxConnectionsPerMachine = 20;
+        private int connectTimeout = 2000;
+        private int readTimeout = 30000;
+        private int connectionRequestTimeout = 0;
+        private long maxIdleTime = 60000;
+        private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getMaxConnectionsPerMachine() {
+            return maxConnectionsPerMachine;
+        }
+
+        public void setMaxConnectionsPerMachine(int maxConnectionsPerMachine) {
+            this.maxConnectionsPerMachine = maxConnectionsPerMachine;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public int getConnectionRequestTimeout() {
+            return connectionRequestTimeout;
+        }
+
+        public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+        }
+
+        public long getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(long maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public int getIoThreads() {
+            return ioThreads;
+        }
+
+        public void setIoThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+        }
+    }
+
+    public static class Cache extends CacheSettings {
+        private String prefix;
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * @param prefix the directory, such as <code>/config</code>, whose keys are held in memory
+         */
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    public enum ReadSelector {
+        /**
+         * Reads go to the same machine as writes
+         */
+        NONE,
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING,
+        LATENCY_EWMA
+    }
+}
@@ -0,0 +1,100 @@
+package me.itzg.etcd.boot;
+
+import me.itzg.etcd.EtcdCache;
+import me.itzg.etcd.EtcdMetrics;
+import me.itzg.etcd.EtcdOperation;
+import me.itzg.etcd.EtcdService;
+import me.itzg.etcd.SimpleEtcdMetrics;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the service's {@link SimpleEtcdMetrics}, if it is measured by them, and the statistics of the
+ * {@link EtcdCache}, if there is one, to the actuator's metrics endpoint. Latencies are in milliseconds, and
+ * only operations that have been used are included, as <code>etcd.&lt;operation&gt;.*</code>.
+ *
+ * @author Geoff Bourne
+ * @since 7/17/2015
+ */
+public class EtcdPublicMetrics implements PublicMetrics {
+    private final EtcdService etcdService;
+    private final EtcdCache etcdCache;
+
+    /**
+     * @param etcdCache null if there is none
+     */
+    public EtcdPublicMetrics(EtcdService etcdService, EtcdCache etcdCache) {
+        this.etcdService = etcdService;
+        this.etcdCache = etcdCache;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> result = new ArrayList<>();
+
+        final EtcdMetrics metrics = etcdService.getMetrics();
+        if (metrics instanceof SimpleEtcdMetrics) {
+            addOperations((SimpleEtcdMetrics) metrics, result);
+        }
+
+        int ejected = 0;
+        for (URI machine : etcdService.getMachines()) {
+            if (etcdService.isEjected(machine)) {
+                ++ejected;
+            }
+        }
+        result.add(new Metric<Number>("etcd.machines.ejected", ejected));
+
+        if (etcdCache != null) {
+            result.add(new Metric<Number>("etcd.cache.size", etcdCache.size()));
+            result.add(new Metric<Number>("etcd.cache.hits", etcdCache.getHitCount()));
+            result.add(new Metric<Number>("etcd.cache.misses", etcdCache.getMissCount()));
+            result.add(new Metric<Number>("etcd.cache.stale", etcdCache.getStaleCount()));
+            result.add(new Metric<Number>("etcd.cache.evictions", etcdCache.getEvictionCount()));
+        }
+        return result;
+    }
+
+    private static void addOperations(SimpleEtcdMetrics metrics, List<Metric<?>> result) {
+        for (EtcdOperation operation : EtcdOperation.values()) {
+            final SimpleEtcdMetrics.LatencyHistogram latency = metrics.getLatency(operation);
+            if (latency.getCount() == 0 && metrics.getInFlight(operation) == 0) {
+                continue;
+            }
+            final String prefix = "etcd." + toName(operation) + ".";
+            result.add(new Metric<Number>(prefix + "count", latency.getCount()));
+            result.add(new Metric<Number>(prefix + "failures", metrics.getFailures(operation)));
+            result.add(new Metric<Number>(prefix + "inFlight", metrics.getInFlight(operation)));
+            result.add(new Metric<Number>(prefix + "mean", toMillis(latency.getMeanNanos())));
+            result.add(new Metric<Number>(prefix + "p99", toMillis(latency.getPercentileNanos(0.99))));
+            if (operation.isConditional()) {
+                result.add(new Metric<Number>(prefix + "conflictRatio", metrics.getConflictRatio(operation)));
+            }
+        }
+    }
+
+    /**
+     * @return such as <code>updateKeyAtomically</code> for {@link EtcdOperation#UPDATE_KEY_ATOMICALLY}
+     */
+    static String toName(EtcdOperation operation) {
+        final StringBuilder sb = new StringBuilder();
+        for (String word : operation.name().toLowerCase().split("_")) {
+            if (sb.length() == 0) {
+                sb.append(word);
+            } else if (!word.isEmpty()) {
+                sb.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,305 @@
+package me.itzg.etcd.keys;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A memory-efficient, read-only copy of a tree of {@link Node}s, for holding large recursive results.
+ * <p>
+ * Rather than a full key, each node holds just its name, which is shared with every other node of the same
+ * name. Values are held as UTF-8 bytes, expirations and indexes as primitives and children in an array
+ * sorted by name so that lookups are a binary search at each level. Nodes are converted back into
+ * {@link Node}s only when retrieved.
+ * </p>
+ *
+ * @author Geoff Bourne
+ * @since 7/9/2015
+ */
+public class CompactTree {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEP = "/";
+    private static final CompactNode[] NO_CHILDREN = new CompactNode[0];
+    private static final Comparator<CompactNode> BY_NAME = new Comparator<CompactNode>() {
+        @Override
+        public int compare(CompactNode o1, CompactNode o2) {
+            return o1.name.compareTo(o2.name);
+        }
+    };
+
+    private final String baseKey;
+    private final CompactNode root;
+    private final int size;
+
+    private CompactTree(String baseKey, CompactNode root, int size) {
+        this.baseKey = baseKey;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param root the node, typically a directory retrieved recursively, to copy along with its descendants
+     */
+    public static CompactTree from(Node root) {
+        final Builder builder = new Builder();
+        final String key = root.getKey() != null ? root.getKey() : SEP;
+        final CompactNode compactRoot = builder.build(root);
+        return new CompactTree(key, compactRoot, builder.count);
+    }
+
+    /**
+     * @return the key of the root node, such as <code>"/config"</code>
+     */
+    public String getBaseKey() {
+        return baseKey;
+    }
+
+    /**
+     * @return the number of nodes in the tree, including the root
+     */
+    public int size() {
+        return size;
+    }
+
+    public CompactNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @param subKey the key relative to the root, which may be nested such as <code>"a/b"</code>.
+     *               An empty sub-key refers to the root itself.
+     * @return the compact node or null if it didn't exist
+     */
+    public CompactNode find(String subKey) {
+        CompactNode current = root;
+        int start = 0;
+        final int length = subKey.length();
+        while (current != null && start < length) {
+            int end = subKey.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                current = current.child(subKey.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return current;
+    }
+
+    /**
+     * @param subKey the key relative to the root, which may be nested such as <code>"a/b"</code>
+     * @return the node, including all of its descendants, or null if it didn't exist
+     */
+    public Node get(String subKey) {
+        final CompactNode found = find(subKey);
+        if (found == null) {
+            return null;
+        }
+        final StringBuilder key = new StringBuilder(baseKey);
+        for (String part : subKey.split(SEP)) {
+            if (!part.isEmpty()) {
+                appendSegment(key, part);
+            }
+        }
+        return found.toNode(key.toString(), true);
+    }
+
+    /**
+     * @return the entire tree converted back into nodes
+     */
+    public Node toNode() {
+        return root.toNode(baseKey, true);
+    }
+
+    private static void appendSegment(StringBuilder key, String name) {
+        if (key.length() == 0 || key.charAt(key.length() - 1) != '/') {
+            key.append('/');
+        }
+        key.append(name);
+    }
+
+    /**
+     * One node of a {@link CompactTree}.
+     */
+    public static class CompactNode {
+        private final String name;
+        private final byte[] value;
+        private final boolean dir;
+        private final long createdIndex;
+        private final long modifiedIndex;
+        private final long expiration;
+        private final int ttl;
+        private final CompactNode[] children;
+
+        CompactNode(String name, byte[] value, boolean dir, long createdIndex, long modifiedIndex,
+                    long expiration, int ttl, CompactNode[] children) {
+            this.name = name;
+            this.value = value;
+            this.dir = dir;
+            this.createdIndex = createdIndex;
+            this.modifiedIndex = modifiedIndex;
+            this.expiration = expiration;
+            this.ttl = ttl;
+            this.children = children;
+        }
+
+        /**
+         * @return the last segment of the node's key, which is empty for the root of the keyspace
+         */
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDir() {
+            return dir;
+        }
+
+        /**
+         * @return the value decoded from its UTF-8 bytes or null for a directory
+         */
+        public String getValue() {
+            return value != null ? new String(value, UTF_8) : null;
+        }
+
+        /**
+         * @return the length in bytes of the UTF-8 value or -1 for a directory
+         */
+        public int getValueLength() {
+            return value != null ? value.length : -1;
+        }
+
+        public long getCreatedIndex() {
+            return createdIndex;
+        }
+
+        public long getModifiedIndex() {
+            return modifiedIndex;
+        }
+
+        /**
+         * @return the expiration in milliseconds since the epoch or zero if the node doesn't expire
+         */
+        public long getExpirationTime() {
+            return expiration;
+        }
+
+        public int getTtl() {
+            return ttl;
+        }
+
+        /**
+         * @return the children sorted by name
+         */
+        public List<CompactNode> getChildren() {
+            return Collections.unmodifiableList(Arrays.asList(children));
+        }
+
+        /**
+         * @return the immediate child of the given name or null if there isn't one
+         */
+        public CompactNode child(String childName) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int cmp = children[mid].name.compareTo(childName);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param key       the full key of this node, which isn't retained by the compact node
+         * @param recursive if true, the descendants are also converted
+         */
+        public Node toNode(String key, boolean recursive) {
+            final Node node = new Node();
+            node.setKey(key);
+            node.setValue(getValue());
+            node.setDir(dir);
+            node.setCreatedIndex(createdIndex);
+            node.setModifiedIndex(modifiedIndex);
+            node.setTtl(ttl);
+            if (expiration != 0) {
+                node.setExpiration(new Date(expiration));
+            }
+            if (recursive && children.length > 0) {
+                final List<Node> nodes = new ArrayList<>(children.length);
+                for (CompactNode child : children) {
+                    final StringBuilder childKey = new StringBuilder(key.length() + child.name.length() + 1)
+                            .append(key);
+                    appendSegment(childKey, child.name);
+                    nodes.add(child.toNode(childKey.toString(), true));
+                }
+                node.setNodes(nodes);
+            }
+            return node;
+        }
+    }
+
+    private static class Builder {
+        /**
+         * Shares the instance of each distinct name across the tree
+         */
+        private final Map<String, String> names = new HashMap<>();
+        private int count;
+
+        CompactNode build(Node node) {
+            ++count;
+            final List<Node> nodes = node.getNodes();
+            final CompactNode[] children;
+            if (nodes == null || nodes.isEmpty()) {
+                children = NO_CHILDREN;
+            } else {
+                children = new CompactNode[nodes.size()];
+                for (int i = 0; i < children.length; ++i) {
+                    children[i] = build(nodes.get(i));
+                }
+                Arrays.sort(children, BY_NAME);
+            }
+
+            final String value = node.getValue();
+            final Date expiration = node.getExpiration();
+            return new CompactNode(intern(nameOf(node.getKey())),
+                    value != null ? value.getBytes(UTF_8) : null,
+                    node.isDir() || nodes != null,
+                    node.getCreatedIndex(), node.getModifiedIndex(),
+                    expiration != null ? expiration.getTime() : 0,
+                    node.getTtl(),
+                    children);
+        }
+
+        private String intern(String name) {
+            final String existing = names.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            names.put(name, name);
+            return name;
+        }
+
+        private static String nameOf(String key) {
+            if (key == null) {
+                return "";
+            }
+            int end = key.length();
+            while (end > 0 && key.charAt(end - 1) == '/') {
+                --end;
+            }
+            return key.substring(key.lastIndexOf('/', end - 1) + 1, end);
+        }
+    }
+}
@@ -8,20 +8,20 @@ import java.util.List;
  * @since 6/18/2015
  */
 public class Node {
-    private int createdIndex;
+    private long createdIndex;
     private Date expiration;
     private String key;
-    private int modifiedIndex;
+    private long modifiedIndex;
     private int ttl;
     private String value;
     private List<Node> nodes;
     private boolean dir;
 
-    public int getCreatedIndex() {
+    public long getCreatedIndex() {
         return createdIndex;
     }
 
-    public void setCreatedIndex(int createdIndex) {
+    public void setCreatedIndex(long createdIndex) {
         this.createdIndex = createdIndex;
     }
 
@@ -41,11 +41,11 @@ public class Node {
         this.key = key;
     }
 
-    public int getModifiedIndex() {
+    public long getModifiedIndex() {
         return modifiedIndex;
     }
 
-    public void setModifiedIndex(int modifiedIndex) {
+    public void setModifiedIndex(long modifiedIndex) {
         this.modifiedIndex = modifiedIndex;
     }
 
@@ -8,7 +8,7 @@ public class Response {
     private String action;
     private String cause;
     private int errorCode;
-    private int index;
+    private long index;
     private String message;
 
     private Node node;
@@ -38,11 +38,11 @@ public class Response {
         this.errorCode = errorCode;
     }
 
-    public int getIndex() {
+    public long getIndex() {
         return index;
     }
 
-    public void setIndex(int index) {
+    public void setIndex(long index) {
         this.index = index;
     }
 
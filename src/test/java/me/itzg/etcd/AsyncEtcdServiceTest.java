@@ -0,0 +1,118 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 6/28/2015
+ */
+public class AsyncEtcdServiceTest {
+
+    private StubEtcdServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testManyInFlightOnOneIoThread() throws Exception {
+        final TransportSettings settings = new TransportSettings();
+        settings.setIoThreads(1);
+
+        try (AsyncEtcdService etcdService = new AsyncEtcdService(new URI[]{server.getUri()}, settings)) {
+            final List<ListenableFuture<Void>> puts = new ArrayList<>();
+            for (int i = 0; i < 500; ++i) {
+                puts.add(etcdService.put("value-" + i, "many", "key-" + i));
+            }
+            for (ListenableFuture<Void> put : puts) {
+                put.get(10, TimeUnit.SECONDS);
+            }
+
+            final List<ListenableFuture<Node>> gets = new ArrayList<>();
+            for (int i = 0; i < 500; ++i) {
+                gets.add(etcdService.get("many", "key-" + i));
+            }
+            for (int i = 0; i < gets.size(); ++i) {
+                assertEquals("value-" + i, gets.get(i).get(10, TimeUnit.SECONDS).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testConditionalOperations() throws Exception {
+        try (AsyncEtcdService etcdService = new AsyncEtcdService(new URI[]{server.getUri()})) {
+            assertNull(etcdService.get("cas").get());
+
+            assertTrue(etcdService.putIfNotExists("first", "cas").get());
+            assertFalse(etcdService.putIfNotExists("second", "cas").get());
+
+            final Node node = etcdService.get("cas").get();
+            assertEquals("first", node.getValue());
+
+            assertFalse(etcdService.updateKeyAtomically("stale", node.getModifiedIndex() - 1, "/cas").get());
+            assertTrue(etcdService.updateKeyAtomically("updated", node.getModifiedIndex(), "/cas").get());
+            assertEquals("updated", etcdService.get("cas").get().getValue());
+
+            try {
+                etcdService.deleteKey("/missing").get();
+                fail("Expected missing key");
+            } catch (ExecutionException e) {
+                assertEquals(EtcdError.EcodeKeyNotFound, ((EtcdException) e.getCause()).getEtcdError());
+            }
+        }
+    }
+
+    @Test
+    public void testTtlKeptThroughCompareAndSwap() throws Exception {
+        try (AsyncEtcdService etcdService = new AsyncEtcdService(new URI[]{server.getUri()})) {
+            etcdService.put("1", 30, "heartbeat").get();
+            final long index = etcdService.get("heartbeat").get().getModifiedIndex();
+
+            assertTrue(etcdService.updateKeyAtomically("2", index, 30, "/heartbeat").get());
+            assertEquals(30, etcdService.get("heartbeat").get().getTtl());
+            assertTrue(etcdService.updateKeyAtomically("3", "2", 30, "heartbeat").get());
+            assertEquals(30, etcdService.get("heartbeat").get().getTtl());
+
+            assertTrue(etcdService.createDirIfNotExists(30, "session").get());
+            assertEquals(30, etcdService.getResponse(false, "session").get().getNode().getTtl());
+        }
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        final StubEtcdServer stoppedServer = new StubEtcdServer();
+        final URI stoppedUri = stoppedServer.getUri();
+        stoppedServer.stop();
+
+        server.putValue("/one", "value");
+
+        try (AsyncEtcdService etcdService = new AsyncEtcdService(new URI[]{stoppedUri, server.getUri()})) {
+            assertEquals("value", etcdService.get("one").get(10, TimeUnit.SECONDS).getValue());
+        }
+
+        try (AsyncEtcdService etcdService = new AsyncEtcdService(new URI[]{stoppedUri})) {
+            etcdService.get("one").get(10, TimeUnit.SECONDS);
+            fail("Expected no usable machines");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NoUsableMachinesException);
+        }
+    }
+}
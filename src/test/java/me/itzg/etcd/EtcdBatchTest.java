@@ -0,0 +1,105 @@
+package me.itzg.etcd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/7/2015
+ */
+public class EtcdBatchTest {
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        etcdService = new EtcdService(new URI[]{server.getUri()}, new TransportSettings());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        etcdService.close();
+        server.stop();
+    }
+
+    @Test
+    public void testResultsInOrderWithErrors() throws Exception {
+        server.putValue("/existing", "1");
+
+        final EtcdBatch batch = new EtcdBatch();
+        for (int i = 0; i < 200; ++i) {
+            batch.put("value" + i, "seed", "key" + i);
+        }
+        batch.putIfNotExists("2", "existing")
+                .updateKeyAtomically("3", "wrong", "existing")
+                .updateKeyAtomically("4", "1", "existing")
+                .delete("missing");
+
+        final List<BatchResult> results = etcdService.execute(batch, new BatchSettings());
+
+        assertEquals(204, results.size());
+        for (int i = 0; i < 200; ++i) {
+            assertTrue(results.get(i).isSucceeded());
+            assertEquals("/seed/key" + i, results.get(i).getKey());
+            assertEquals("value" + i, server.getValueOf("/seed/key" + i));
+        }
+        assertEquals(EtcdError.EcodeNodeExist, results.get(200).getError());
+        assertEquals(EtcdError.EcodeTestFailed, results.get(201).getError());
+        assertTrue(results.get(202).isSucceeded());
+        assertEquals("4", results.get(202).getNode().getValue());
+        assertEquals(EtcdError.EcodeKeyNotFound, results.get(203).getError());
+    }
+
+    @Test
+    public void testTtlOnConditionalWrites() throws Exception {
+        final List<BatchResult> created = etcdService.execute(new EtcdBatch().putIfNotExists("1", 30, "heartbeat"),
+                new BatchSettings());
+        assertEquals(30, created.get(0).getNode().getTtl());
+
+        final long index = created.get(0).getNode().getModifiedIndex();
+        final List<BatchResult> updated = etcdService.execute(new EtcdBatch()
+                .updateKeyAtomically("2", index, 30, "heartbeat"), new BatchSettings());
+        assertEquals(30, updated.get(0).getNode().getTtl());
+        assertEquals(30, etcdService.get("heartbeat").getTtl());
+    }
+
+    @Test
+    public void testTargetThroughput() throws Exception {
+        final EtcdBatch batch = new EtcdBatch();
+        for (int i = 0; i < 20; ++i) {
+            batch.put("v", "paced", "key" + i);
+        }
+        final BatchSettings settings = new BatchSettings();
+        settings.setTargetThroughput(100);
+
+        final long start = System.nanoTime();
+        final List<BatchResult> results = etcdService.execute(batch, settings);
+        final long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(20, results.size());
+        // the first permit is immediate and the rest are 10ms apart
+        assertTrue("took " + elapsedMillis, elapsedMillis >= 180);
+    }
+
+    @Test
+    public void testUnreachableClusterReported() throws Exception {
+        final StubEtcdServer stopped = new StubEtcdServer();
+        final URI stoppedUri = stopped.getUri();
+        stopped.stop();
+
+        try (EtcdService unreachable = new EtcdService(new URI[]{stoppedUri}, new TransportSettings())) {
+            final List<BatchResult> results = unreachable.execute(new EtcdBatch().put("v", "key"), new BatchSettings());
+            assertFalse(results.get(0).isSucceeded());
+            assertNull(results.get(0).getError());
+            assertTrue(results.get(0).getException() instanceof NoUsableMachinesException);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/1/2015
+ */
+public class EtcdCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        final TransportSettings settings = new TransportSettings();
+        settings.setReadTimeout(500);
+        etcdService = new EtcdService(new URI[]{server.getUri()}, settings);
+
+        server.putValue("/config/a", "1");
+        server.putValue("/config/nested/b", "2");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        etcdService.close();
+        server.stop();
+    }
+
+    @Test
+    public void testReadsAreLocalAndKeptFresh() throws Exception {
+        try (EtcdCache cache = new EtcdCache(etcdService, new CacheSettings(), "config")) {
+            cache.start();
+
+            assertEquals("1", cache.get("config", "a").getValue());
+            assertEquals("2", cache.get("/config/nested/b").getValue());
+            assertNull(cache.get("config", "missing"));
+            assertEquals(3, cache.getHitCount());
+            assertEquals(0, cache.getMissCount());
+
+            server.putValue("/config/a", "changed");
+            server.putValue("/config/c", "3");
+            awaitValue(cache, "changed", "config", "a");
+            awaitValue(cache, "3", "config", "c");
+
+            etcdService.delete("config", "nested");
+            for (int i = 0; i < 50 && cache.size() > 2; ++i) {
+                Thread.sleep(100);
+            }
+            assertNull(cache.get("config", "nested", "b"));
+
+            // every read was answered from the cache, with changes applied by the watch
+            assertEquals(0, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testStartBeforePrefixExists() throws Exception {
+        try (EtcdCache cache = new EtcdCache(etcdService, new CacheSettings(), "later")) {
+            cache.start();
+            assertNull(cache.get("later", "a"));
+
+            server.putValue("/later/a", "1");
+            awaitValue(cache, "1", "later", "a");
+            assertEquals(0, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testBoundedWithReadThrough() throws Exception {
+        server.putValue("/config/c", "3");
+
+        final CacheSettings settings = new CacheSettings();
+        settings.setMaxEntries(2);
+        try (EtcdCache cache = new EtcdCache(etcdService, settings, "config")) {
+            cache.start();
+            assertEquals(2, cache.size());
+            assertEquals(1, cache.getEvictionCount());
+
+            // evicted, so an absent key must be read through
+            assertEquals("1", cache.get("config", "a").getValue());
+            assertNull(cache.get("config", "missing"));
+            assertEquals(2, cache.getMissCount());
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void testReadThroughDoesNotRestoreDeletedKey() throws Exception {
+        server.putValue("/config/c", "3");
+
+        final CacheSettings settings = new CacheSettings();
+        settings.setMaxEntries(2);
+        try (EtcdCache cache = new EtcdCache(etcdService, settings, "config")) {
+            cache.start();
+            final Node stale = etcdService.get("config", "c");
+            cache.get("config", "a");
+            cache.get("config", "nested", "b");
+
+            // the watch delivers the deletion while a read-through of the old node is outstanding
+            final Node deleted = new Node();
+            deleted.setKey("/config/c");
+            deleted.setModifiedIndex(stale.getModifiedIndex() + 1);
+            final Response event = new Response();
+            event.setAction("delete");
+            event.setNode(deleted);
+            cache.onEvent(event);
+
+            assertEquals("3", cache.get("config", "c").getValue());
+            final long misses = cache.getMissCount();
+            cache.get("config", "c");
+            // not cached, so read through again rather than answered with the deleted key
+            assertEquals(misses + 1, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        final CacheSettings settings = new CacheSettings();
+        settings.setExpireAfterWrite(50);
+        try (EtcdCache cache = new EtcdCache(etcdService, settings, "config")) {
+            cache.start();
+            Thread.sleep(100);
+
+            assertEquals("1", cache.get("config", "a").getValue());
+            assertEquals(1, cache.getStaleCount());
+            assertEquals(1, cache.getMissCount());
+            assertEquals("1", cache.get("config", "a").getValue());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    public void testCompareAndSwapWithCachedIndex() throws Exception {
+        try (EtcdCache cache = new EtcdCache(etcdService, new CacheSettings(), "config")) {
+            cache.start();
+
+            final Node cached = cache.get("config", "a");
+            assertTrue(cache.updateKeyAtomically("2", cached));
+            assertFalse(cache.updateKeyAtomically("3", cached));
+
+            assertEquals("2", cache.get("config", "a").getValue());
+        }
+    }
+
+    @Test
+    public void testRestoreFromSnapshot() throws Exception {
+        final CacheSettings settings = new CacheSettings();
+        settings.setSnapshotFile(new File(temporaryFolder.getRoot(), "config.snapshot"));
+        try (EtcdCache cache = new EtcdCache(etcdService, settings, "config")) {
+            cache.start();
+        }
+        assertTrue(settings.getSnapshotFile().isFile());
+
+        // changed while no cache was running
+        server.putValue("/config/a", "changed");
+        server.putValue("/config/c", "3");
+
+        final SimpleEtcdMetrics metrics = new SimpleEtcdMetrics();
+        etcdService.setMetrics(metrics);
+        try (EtcdCache cache = new EtcdCache(etcdService, settings, "config")) {
+            cache.start();
+            assertEquals(2, cache.size());
+            assertEquals("2", cache.get("config", "nested", "b").getValue());
+
+            // caught up by the watch rather than a recursive read
+            awaitValue(cache, "changed", "config", "a");
+            awaitValue(cache, "3", "config", "c");
+            assertEquals(0, metrics.getLatency(EtcdOperation.GET_RESPONSE).getCount());
+            assertEquals(0, cache.getMissCount());
+        }
+
+        // an unreachable cluster still starts from the latest snapshot
+        final StubEtcdServer stoppedServer = new StubEtcdServer();
+        final URI stoppedUri = stoppedServer.getUri();
+        stoppedServer.stop();
+        try (EtcdService unreachable = new EtcdService(new URI[]{stoppedUri});
+             EtcdCache cache = new EtcdCache(unreachable, settings, "config")) {
+            cache.start();
+            assertEquals("changed", cache.get("config", "a").getValue());
+            assertEquals("3", cache.get("config", "c").getValue());
+            assertNull(cache.get("config", "missing"));
+        }
+    }
+
+    @Test
+    public void testUnreadableSnapshotIsReloaded() throws Exception {
+        final CacheSettings settings = new CacheSettings();
+        settings.setSnapshotFile(temporaryFolder.newFile("config.snapshot"));
+        try (EtcdCache cache = new EtcdCache(etcdService, settings, "config")) {
+            cache.start();
+            assertEquals("1", cache.get("config", "a").getValue());
+            assertEquals(0, cache.getMissCount());
+        }
+
+        // replaced with a valid snapshot of the fresh load
+        assertNotNull(CacheSnapshot.read(settings.getSnapshotFile(), "/config"));
+    }
+
+    @Test
+    public void testCorruptSnapshotIsRejected() throws Exception {
+        final File file = temporaryFolder.newFile("config.snapshot");
+        final Node node = new Node();
+        node.setKey("/config/a");
+        node.setValue("1");
+        new CacheSnapshot("/config", 5, true, Collections.singletonList(node)).write(file);
+        final byte[] saved = Files.readAllBytes(file.toPath());
+        // magic, version, prefix, index and complete
+        final int countOffset = 4 + 4 + 4 + "/config".length() + 8 + 1;
+
+        for (int count : new int[]{-5, 2, Integer.MAX_VALUE}) {
+            final byte[] corrupt = saved.clone();
+            ByteBuffer.wrap(corrupt).putInt(countOffset, count);
+            Files.write(file.toPath(), corrupt);
+            try {
+                CacheSnapshot.read(file, "/config");
+                fail("Expected a count of " + count + " to be rejected");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+        Files.write(file.toPath(), Arrays.copyOf(saved, saved.length - 10));
+        try {
+            CacheSnapshot.read(file, "/config");
+            fail("Expected a truncated snapshot to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        final CacheSettings settings = new CacheSettings();
+        settings.setSnapshotFile(file);
+        try (EtcdCache cache = new EtcdCache(etcdService, settings, "config")) {
+            cache.start();
+            assertEquals("2", cache.get("config", "nested", "b").getValue());
+        }
+    }
+
+    private static void awaitValue(EtcdCache cache, String expected, String... path) throws Exception {
+        for (int i = 0; i < 50; ++i) {
+            final Node node = cache.get(path);
+            if (node != null && expected.equals(node.getValue())) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("Cache did not observe " + expected);
+    }
+}
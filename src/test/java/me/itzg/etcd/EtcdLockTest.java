@@ -0,0 +1,169 @@
+package me.itzg.etcd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/11/2015
+ */
+public class EtcdLockTest {
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        etcdService = new EtcdService(new URI[]{server.getUri()});
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        etcdService.close();
+        server.stop();
+    }
+
+    @Test
+    public void testWaitsForPredecessor() throws Exception {
+        final EtcdLock first = etcdService.createLock("first", 30, "locks", "job");
+        final EtcdLock second = etcdService.createLock("second", 30, "locks", "job");
+
+        first.lock();
+        assertTrue(first.isHeld());
+        assertEquals("first", second.getHolder());
+        assertFalse(second.tryLock());
+        // the failed attempt doesn't leave its key behind
+        assertEquals(1, etcdService.get("locks", "job").getNodes().size());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    second.lock();
+                    acquired.countDown();
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            }
+        });
+        waiter.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        final int requestsWhileWaiting = server.getRequestCount();
+        Thread.sleep(200);
+        // waiting is a single long-poll on the predecessor rather than repeated polling
+        assertEquals(requestsWhileWaiting, server.getRequestCount());
+
+        first.unlock();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertTrue(second.isHeld());
+        assertFalse(first.isHeld());
+        assertEquals("second", first.getHolder());
+
+        second.unlock();
+        assertNull(first.getHolder());
+    }
+
+    @Test
+    public void testFailureToAbandonIsSuppressed() throws Exception {
+        final StubEtcdServer failing = new StubEtcdServer();
+        try (EtcdService failingService = new EtcdService(new URI[]{failing.getUri()})) {
+            failingService.createLock("first", 30, "locks", "job").lock();
+            final EtcdLock second = failingService.createLock("second", 30, "locks", "job");
+
+            final AtomicReference<Exception> failure = new AtomicReference<>();
+            final Thread waiter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        second.lock();
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            waiter.start();
+            Thread.sleep(200);
+
+            // fails the wait and then the removal of the abandoned key
+            failing.stop();
+            waiter.join(5000);
+
+            assertNotNull(failure.get());
+            assertEquals(1, failure.get().getSuppressed().length);
+            assertTrue(failure.get().getSuppressed()[0] instanceof NoUsableMachinesException);
+            assertFalse(second.isHeld());
+        }
+    }
+
+    @Test
+    public void testCrashedHolderExpires() throws Exception {
+        final EtcdService crashing = new EtcdService(new URI[]{server.getUri()});
+        final EtcdLock crashed = crashing.createLock("crashed", 1, "locks", "job");
+        crashed.lock();
+        // stops the heartbeats without releasing, just like a crashed process
+        crashing.close();
+
+        final EtcdLock next = etcdService.createLock("next", 1, "locks", "job");
+        final long start = System.currentTimeMillis();
+        next.lock();
+
+        assertTrue(next.isHeld());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        next.unlock();
+    }
+
+    @Test
+    public void testHeartbeatKeepsKeyAlive() throws Exception {
+        final EtcdLock lock = etcdService.createLock("holder", 1, "locks", "job");
+        lock.lock();
+
+        Thread.sleep(2500);
+
+        assertTrue(lock.isHeld());
+        assertEquals("holder", lock.getHolder());
+        lock.unlock();
+        assertTrue(etcdService.get("locks", "job").getNodes().isEmpty());
+    }
+
+    @Test
+    public void testLeaderElection() throws Exception {
+        final LeaderElection one = etcdService.createLeaderElection("one", 30, "election");
+        final LeaderElection two = etcdService.createLeaderElection("two", 30, "election");
+
+        one.campaign();
+        assertTrue(one.isLeader());
+        assertEquals("one", two.getLeader());
+
+        final CountDownLatch elected = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    two.campaign();
+                    elected.countDown();
+                } catch (Exception e) {
+                    // leaves the latch unreleased
+                }
+            }
+        }).start();
+
+        one.resign();
+        assertTrue(elected.await(5, TimeUnit.SECONDS));
+        assertTrue(two.isLeader());
+        assertEquals("two", one.getLeader());
+        two.resign();
+    }
+}
@@ -0,0 +1,137 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/18/2015
+ */
+public class EtcdPropertySourceTest {
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+    private SimpleEtcdMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        final TransportSettings settings = new TransportSettings();
+        settings.setReadTimeout(500);
+        etcdService = new EtcdService(new URI[]{server.getUri()}, settings);
+        metrics = new SimpleEtcdMetrics();
+        etcdService.setMetrics(metrics);
+
+        server.putValue("/config/app/db/url", "jdbc:h2:mem");
+        server.putValue("/config/app/nested/x", "1");
+        server.putValue("/config/app/nested/y", "2");
+        server.putValue("/config/other", "unrelated");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        etcdService.close();
+        server.stop();
+    }
+
+    @Test
+    public void testLookupsAndRefresh() throws Exception {
+        try (EtcdPropertySource source = new EtcdPropertySource("etcd", etcdService, "config", "app")) {
+            source.start();
+            final StandardEnvironment environment = new StandardEnvironment();
+            environment.getPropertySources().addFirst(source);
+
+            for (int i = 0; i < 100; ++i) {
+                assertEquals("jdbc:h2:mem", environment.getProperty("db.url"));
+                assertEquals(1, environment.getProperty("nested.x", Integer.class).intValue());
+                assertNull(environment.getProperty("other"));
+            }
+            assertEquals(new HashSet<>(Arrays.asList("db.url", "nested.x", "nested.y")),
+                    new HashSet<>(Arrays.asList(source.getPropertyNames())));
+
+            // the only read was the initial load
+            assertEquals(1, metrics.getLatency(EtcdOperation.GET_RESPONSE).getCount());
+            assertEquals(0, metrics.getLatency(EtcdOperation.GET).getCount());
+
+            server.putValue("/config/app/db/url", "jdbc:h2:file");
+            server.putValue("/config/app/added", "3");
+            awaitProperty(environment, "jdbc:h2:file", "db.url");
+            awaitProperty(environment, "3", "added");
+
+            etcdService.delete("config", "app", "nested");
+            for (int i = 0; i < 50 && source.containsProperty("nested.x"); ++i) {
+                Thread.sleep(100);
+            }
+            assertFalse(environment.containsProperty("nested.x"));
+            assertFalse(environment.containsProperty("nested.y"));
+            assertEquals("3", environment.getProperty("added"));
+        }
+    }
+
+    @Test
+    public void testMissingPrefix() throws Exception {
+        try (EtcdPropertySource source = new EtcdPropertySource("etcd", etcdService, "absent")) {
+            source.start();
+            assertEquals(0, source.getPropertyNames().length);
+
+            server.putValue("/absent/later", "value");
+            for (int i = 0; i < 50 && !source.containsProperty("later"); ++i) {
+                Thread.sleep(100);
+            }
+            assertEquals("value", source.getProperty("later"));
+        }
+    }
+
+    @Test
+    public void testEventsAppliedInPlace() throws Exception {
+        try (EtcdPropertySource source = new EtcdPropertySource("etcd", etcdService, "config", "app")) {
+            source.start();
+
+            for (int i = 0; i < 1000; ++i) {
+                source.onEvent(event("set", "/config/app/burst/k" + i, String.valueOf(i), false));
+            }
+            assertEquals(1003, source.getPropertyNames().length);
+            assertEquals("999", source.getProperty("burst.k999"));
+
+            source.onEvent(event("delete", "/config/app/burst/k0", null, false));
+            assertFalse(source.containsProperty("burst.k0"));
+            assertEquals("1", source.getProperty("burst.k1"));
+
+            source.onEvent(event("expire", "/config/app/burst", null, true));
+            assertEquals(new HashSet<>(Arrays.asList("db.url", "nested.x", "nested.y")),
+                    new HashSet<>(Arrays.asList(source.getPropertyNames())));
+        }
+    }
+
+    private static Response event(String action, String key, String value, boolean dir) {
+        final Node node = new Node();
+        node.setKey(key);
+        node.setValue(value);
+        node.setDir(dir);
+        final Response event = new Response();
+        event.setAction(action);
+        event.setNode(node);
+        return event;
+    }
+
+    private static void awaitProperty(StandardEnvironment environment, String expected, String name)
+            throws Exception {
+        for (int i = 0; i < 50; ++i) {
+            if (expected.equals(environment.getProperty(name))) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("Environment did not observe " + expected + " for " + name);
+    }
+}
@@ -0,0 +1,494 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.CompactTree;
+import me.itzg.etcd.keys.Node;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 6/29/2015
+ */
+public class EtcdServiceTest {
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        etcdService = new EtcdService(new URI[]{server.getUri()});
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        etcdService.close();
+        server.stop();
+    }
+
+    @Test
+    public void testBulkLoadRecursive() throws Exception {
+        server.putValue("/config/b", "2");
+        server.putValue("/config/a", "1");
+        server.putValue("/config/nested/c", "3");
+
+        final EtcdService.BulkGetter bulkGetter = etcdService.bulkLoad(true, true, "config");
+        final int requestsAfterLoad = server.getRequestCount();
+
+        assertEquals(Arrays.asList("a", "b", "nested", "nested/c"), bulkGetter.getSubKeys());
+        assertEquals("1", bulkGetter.get("a").getValue());
+        assertEquals("2", bulkGetter.get("/b").getValue());
+        assertTrue(bulkGetter.get("nested").isDir());
+        assertEquals("3", bulkGetter.get("nested/c").getValue());
+        assertNull(bulkGetter.get("missing"));
+        assertNull(bulkGetter.get("nested/missing"));
+
+        assertEquals(requestsAfterLoad, server.getRequestCount());
+    }
+
+    @Test
+    public void testBulkLoadShallowFallsBackForNestedKeys() throws Exception {
+        server.putValue("/config/a", "1");
+        server.putValue("/config/nested/c", "3");
+
+        final EtcdService.BulkGetter bulkGetter = etcdService.bulkLoad(false, false, "config");
+        final int requestsAfterLoad = server.getRequestCount();
+
+        assertEquals("1", bulkGetter.get("a").getValue());
+        assertNull(bulkGetter.get("missing"));
+        assertEquals(requestsAfterLoad, server.getRequestCount());
+
+        assertEquals("3", bulkGetter.get("nested/c").getValue());
+        assertEquals(requestsAfterLoad + 1, server.getRequestCount());
+    }
+
+    @Test
+    public void testBulkLoadRoot() throws Exception {
+        server.putValue("/top", "1");
+
+        final EtcdService.BulkGetter bulkGetter = etcdService.bulkLoad(true, false, "/");
+        assertEquals("1", bulkGetter.get("top").getValue());
+    }
+
+    @Test
+    public void testBulkLoadMissing() throws Exception {
+        assertNull(etcdService.bulkLoad(true, false, "missing"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBulkLoadNotDirectory() throws Exception {
+        server.putValue("/file", "1");
+        etcdService.bulkLoad(true, false, "file");
+    }
+
+    @Test
+    public void testBulkGetRetrievesEachKey() throws Exception {
+        server.putValue("/config/a", "1");
+
+        final EtcdService.BulkGetter bulkGetter = etcdService.bulkGet("config");
+        assertFalse(bulkGetter.isLoaded());
+        final Node node = bulkGetter.get("a");
+        assertEquals("1", node.getValue());
+    }
+
+    @Test
+    public void testStreamLeaves() throws Exception {
+        server.putValue("/config/a", "1");
+        server.putValue("/config/nested/b", "2");
+        server.putValue("/config/nested/deeper/c", "3");
+        server.putDir("/config/empty");
+
+        final List<String> leaves = new ArrayList<>();
+        final long index = etcdService.streamLeaves(new NodeCallback() {
+            @Override
+            public void onLeaf(Node leaf) {
+                leaves.add(leaf.getKey() + "=" + leaf.getValue());
+            }
+        }, "config");
+
+        assertEquals(Arrays.asList("/config/a=1", "/config/nested/b=2", "/config/nested/deeper/c=3"), leaves);
+        assertEquals(server.getIndex(), index);
+        assertEquals(-1, etcdService.streamLeaves(new NodeCallback() {
+            @Override
+            public void onLeaf(Node leaf) {
+                fail("Nothing to stream");
+            }
+        }, "missing"));
+    }
+
+    @Test
+    public void testClientErrorsAreDecoded() throws Exception {
+        try {
+            etcdService.delete("missing");
+            fail("Expected missing key");
+        } catch (EtcdException e) {
+            assertEquals(EtcdError.EcodeKeyNotFound, e.getEtcdError());
+        }
+    }
+
+    @Test
+    public void testConnectTimeoutFailsOver() throws Exception {
+        final URI blackholed = URI.create("http://127.0.0.1:1");
+        final IOException[] failure = new IOException[1];
+        final ClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory() {
+            @Override
+            public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+                if (uri.getPort() == blackholed.getPort()) {
+                    throw failure[0];
+                }
+                return super.createRequest(uri, httpMethod);
+            }
+        };
+
+        failure[0] = new ConnectTimeoutException("Connect to " + blackholed + " timed out");
+        try (EtcdService pooled = new EtcdService(new URI[]{blackholed, server.getUri()}, requestFactory)) {
+            pooled.put("1", "pooled");
+        }
+        assertEquals("1", server.getValueOf("/pooled"));
+
+        failure[0] = new SocketTimeoutException("connect timed out");
+        try (EtcdService simple = new EtcdService(new URI[]{blackholed, server.getUri()}, requestFactory)) {
+            simple.put("1", "simple");
+        }
+        assertEquals("1", server.getValueOf("/simple"));
+
+        // the write may have been applied, so it isn't sent again
+        failure[0] = new SocketTimeoutException("Read timed out");
+        try (EtcdService simple = new EtcdService(new URI[]{blackholed, server.getUri()}, requestFactory)) {
+            simple.put("1", "unsent");
+            fail("Expected the read timeout");
+        } catch (ResourceAccessException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        assertNull(server.getValueOf("/unsent"));
+    }
+
+    @Test
+    public void testLoadTree() throws Exception {
+        server.putValue("/config/b", "2");
+        server.putValue("/config/nested/c", "3");
+
+        final CompactTree tree = etcdService.loadTree("config");
+
+        assertEquals(4, tree.size());
+        assertEquals("3", tree.find("nested/c").getValue());
+        assertEquals("/config/b", tree.get("b").getKey());
+        assertNull(etcdService.loadTree("missing"));
+    }
+
+    @Test
+    public void testCompareAndSwapBeyondIntRange() throws Exception {
+        server.setIndex(Integer.MAX_VALUE);
+        server.putValue("/key", "1");
+
+        final Node node = etcdService.get("key");
+        assertEquals(Integer.MAX_VALUE + 1L, node.getModifiedIndex());
+        assertTrue(etcdService.updateKeyAtomically("2", node.getModifiedIndex(), "/key"));
+        assertFalse(etcdService.updateKeyAtomically("3", node.getModifiedIndex(), "/key"));
+        assertTrue(etcdService.deleteKeyAtomically("/key", etcdService.get("key").getModifiedIndex()));
+    }
+
+    @Test
+    public void testComputeConcurrentCounter() throws Exception {
+        final ComputeSettings settings = new ComputeSettings();
+        settings.setInitialBackoff(1);
+        settings.setMaxBackoff(20);
+        settings.setMaxAttempts(1000);
+        final SimpleEtcdMetrics metrics = new SimpleEtcdMetrics();
+        etcdService.setMetrics(metrics);
+
+        final int threads = 8;
+        final int increments = 25;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        for (int t = 0; t < threads; ++t) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < increments; ++i) {
+                            etcdService.compute(settings, new NodeUpdater() {
+                                @Override
+                                public String update(Node current) {
+                                    return String.valueOf(current != null ? Integer.parseInt(current.getValue()) + 1 : 1);
+                                }
+                            }, "counter");
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        done.await();
+        assertNull(error.get());
+        assertEquals(String.valueOf(threads * increments), server.getValueOf("/counter"));
+        assertEquals(threads * increments, metrics.getConditionApplied(EtcdOperation.COMPUTE));
+        assertEquals(0, metrics.getConditionConflicts(EtcdOperation.COMPUTE));
+    }
+
+    @Test
+    public void testComputeGivesUpAfterMaxAttempts() throws Exception {
+        server.putValue("/key", "1");
+        final ComputeSettings settings = new ComputeSettings();
+        settings.setMaxAttempts(3);
+        settings.setInitialBackoff(1);
+
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            etcdService.compute(settings, new NodeUpdater() {
+                @Override
+                public String update(Node current) {
+                    calls.incrementAndGet();
+                    // another writer always gets in between the read and the swap
+                    server.putValue("/key", current.getValue());
+                    return "mine";
+                }
+            }, "key");
+            fail("Expected to give up");
+        } catch (EtcdException e) {
+            assertEquals(EtcdError.EcodeTestFailed, e.getEtcdError());
+        }
+        assertEquals(3, calls.get());
+        assertEquals("1", server.getValueOf("/key"));
+    }
+
+    @Test
+    public void testComputeUnchanged() throws Exception {
+        server.putValue("/key", "1");
+        final long index = server.getIndex();
+
+        final Node node = etcdService.compute(new NodeUpdater() {
+            @Override
+            public String update(Node current) {
+                return null;
+            }
+        }, "key");
+
+        assertEquals("1", node.getValue());
+        assertEquals(index, server.getIndex());
+    }
+
+    @Test
+    public void testPutWithTtlAndRefresh() throws Exception {
+        etcdService.put("v", 1, "expiring");
+        assertEquals(1, etcdService.get("expiring").getTtl());
+        assertNotNull(etcdService.get("expiring").getExpiration());
+        assertFalse(etcdService.putIfNotExists("other", 1, "expiring"));
+
+        Thread.sleep(600);
+        assertTrue(etcdService.refresh(1, "expiring"));
+        Thread.sleep(600);
+        // still alive since the refresh restarted the TTL
+        assertEquals("v", etcdService.get("expiring").getValue());
+
+        Thread.sleep(600);
+        assertNull(etcdService.get("expiring"));
+        assertFalse(etcdService.refresh(1, "expiring"));
+        assertTrue(etcdService.putIfNotExists("again", 0, "expiring"));
+        assertEquals(0, etcdService.get("expiring").getTtl());
+    }
+
+    @Test
+    public void testTtlKeptThroughCompareAndSwap() throws Exception {
+        etcdService.put("1", 30, "heartbeat");
+        final long index = etcdService.get("heartbeat").getModifiedIndex();
+
+        assertTrue(etcdService.updateKeyAtomically("2", index, 30, "/heartbeat"));
+        assertEquals(30, etcdService.get("heartbeat").getTtl());
+        assertTrue(etcdService.updateKeyAtomically("3", "2", 30, "heartbeat"));
+        assertEquals(30, etcdService.get("heartbeat").getTtl());
+
+        // like etcd, a swap without a TTL makes the key permanent
+        assertTrue(etcdService.updateKeyAtomically("4", "3", "heartbeat"));
+        assertEquals(0, etcdService.get("heartbeat").getTtl());
+
+        assertTrue(etcdService.createDirIfNotExists(30, "session"));
+        assertEquals(30, etcdService.getResponse(false, "session").getNode().getTtl());
+    }
+
+    @Test
+    public void testTtlKeptThroughCompute() throws Exception {
+        etcdService.put("1", 30, "lease");
+
+        final Node computed = etcdService.compute(new NodeUpdater() {
+            @Override
+            public String update(Node current) {
+                return String.valueOf(Integer.parseInt(current.getValue()) + 1);
+            }
+        }, "lease");
+
+        assertEquals("2", computed.getValue());
+        final Node node = etcdService.get("lease");
+        assertTrue(node.getTtl() > 0 && node.getTtl() <= 30);
+    }
+
+    @Test
+    public void testCreateInOrder() throws Exception {
+        final Node first = etcdService.createInOrder("a", 0, "queue");
+        final Node second = etcdService.createInOrder("b", 0, "queue");
+
+        assertTrue(first.getKey().startsWith("/queue/"));
+        assertTrue(first.getKey().compareTo(second.getKey()) < 0);
+        assertEquals("a", etcdService.get(first.getKey()).getValue());
+        assertEquals(Arrays.asList(first.getKey().substring(7), second.getKey().substring(7)),
+                etcdService.bulkLoad(false, true, "queue").getSubKeys());
+    }
+
+    @Test
+    public void testEnsureDirCached() throws Exception {
+        final int before = server.getRequestCount();
+        etcdService.ensureDir("a", "b", "c");
+        // the missing levels are created by a single request
+        assertEquals(before + 1, server.getRequestCount());
+        assertTrue(etcdService.get("a", "b", "c").isDir());
+
+        final int afterCreate = server.getRequestCount();
+        etcdService.ensureDir("a", "b", "c");
+        etcdService.ensureDir("a", "b");
+        etcdService.ensureDir("/a/");
+        assertEquals(afterCreate, server.getRequestCount());
+
+        etcdService.delete("a");
+        assertNull(etcdService.get("a"));
+        etcdService.ensureDir("a", "b");
+        assertTrue(etcdService.get("a", "b").isDir());
+    }
+
+    @Test
+    public void testEnsureDirExisting() throws Exception {
+        server.putDir("/x/y");
+
+        etcdService.ensureDir("x", "y");
+        final int afterFirst = server.getRequestCount();
+        etcdService.ensureDir("x", "y");
+
+        assertEquals(afterFirst, server.getRequestCount());
+        assertTrue(etcdService.get("x", "y").isDir());
+    }
+
+    @Test
+    public void testEnsureDirConcurrentCallersShareCreation() throws Exception {
+        final int before = server.getRequestCount();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int i = 0; i < 8; ++i) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        etcdService.ensureDir("shared", "dir");
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(before + 1, server.getRequestCount());
+    }
+
+    @Test
+    public void testCoalesceReads() throws Exception {
+        server.putValue("/hot", "v");
+        server.setReadDelay(500);
+        etcdService.setCoalesceReads(true);
+
+        final int before = server.getRequestCount();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Node[] results = new Node[20];
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < results.length; ++i) {
+            final int slot = i;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results[slot] = etcdService.get("hot");
+                    } catch (Exception e) {
+                        // leaves the result missing
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(before + 1, server.getRequestCount());
+        for (Node result : results) {
+            assertSame(results[0], result);
+        }
+        assertEquals("v", results[0].getValue());
+
+        // later reads aren't served from the completed one
+        server.setReadDelay(0);
+        server.putValue("/hot", "v2");
+        assertEquals("v2", etcdService.get("hot").getValue());
+    }
+
+    @Test
+    public void testClientErrorsDecoded() throws Exception {
+        server.putValue("/file", "v");
+        final long index = server.getIndex();
+
+        try {
+            etcdService.updateKeyAtomically("new", 1L, "/missing");
+            fail("Expected a missing key");
+        } catch (ClientEtcdException e) {
+            assertEquals(EtcdError.EcodeKeyNotFound, e.getEtcdError());
+            assertEquals(EtcdError.EcodeKeyNotFound.getCode(), e.getErrorCode());
+            assertEquals("/missing", e.getEtcdCause());
+            assertEquals(index, e.getIndex());
+        }
+
+        try {
+            etcdService.createInOrder("v", 0, "file");
+            fail("Expected a key where a directory is needed");
+        } catch (ClientEtcdException e) {
+            assertEquals(EtcdError.EcodeNotDir, e.getEtcdError());
+        }
+
+        // expected outcomes are results rather than exceptions
+        assertFalse(etcdService.updateKeyAtomically("new", index + 10, "/file"));
+        assertFalse(etcdService.putIfNotExists("other", "file"));
+        assertFalse(etcdService.refresh(10, "missing"));
+        assertNull(etcdService.get("missing"));
+        assertEquals("v", server.getValueOf("/file"));
+    }
+}
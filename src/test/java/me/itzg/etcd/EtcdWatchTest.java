@@ -0,0 +1,141 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 6/30/2015
+ */
+public class EtcdWatchTest {
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        final TransportSettings settings = new TransportSettings();
+        settings.setReadTimeout(500);
+        etcdService = new EtcdService(new URI[]{server.getUri()}, settings);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        etcdService.close();
+        server.stop();
+    }
+
+    @Test
+    public void testEventsDeliveredInOrderToAllListeners() throws Exception {
+        server.putDir("/watched");
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+
+        try (EtcdWatch watch = etcdService.watch("watched")) {
+            watch.addListener(first).addListener(second);
+            watch.start();
+
+            etcdService.put("1", "watched", "a");
+            etcdService.put("ignored", "other");
+            // outlast the read timeout to confirm polling resumes without missing changes
+            Thread.sleep(700);
+            etcdService.put("2", "watched", "nested", "b");
+            etcdService.delete("watched", "a");
+
+            for (RecordingListener listener : new RecordingListener[]{first, second}) {
+                assertEvent(listener.events.poll(5, TimeUnit.SECONDS), "set", "/watched/a");
+                assertEvent(listener.events.poll(5, TimeUnit.SECONDS), "set", "/watched/nested/b");
+                assertEvent(listener.events.poll(5, TimeUnit.SECONDS), "delete", "/watched/a");
+            }
+            assertEquals(server.getIndex() + 1, watch.getWaitIndex());
+        }
+    }
+
+    @Test
+    public void testStartBeforePathExists() throws Exception {
+        server.putValue("/other", "1");
+        final RecordingListener listener = new RecordingListener();
+
+        try (EtcdWatch watch = etcdService.watch("watched")) {
+            watch.addListener(listener);
+            watch.start();
+            // from the index reported along with the missing path
+            assertEquals(server.getIndex() + 1, watch.getWaitIndex());
+
+            etcdService.put("1", "watched", "a");
+            assertEvent(listener.events.poll(5, TimeUnit.SECONDS), "set", "/watched/a");
+        }
+    }
+
+    @Test
+    public void testResyncWhenHistoryCleared() throws Exception {
+        server.setHistoryLimit(2);
+        server.putValue("/watched/a", "1");
+        final long staleIndex = server.getIndex();
+        server.putValue("/watched/b", "2");
+        server.putValue("/watched/c", "3");
+
+        final RecordingListener listener = new RecordingListener();
+        try (EtcdWatch watch = etcdService.watch("watched")) {
+            watch.addListener(listener);
+            watch.start(staleIndex);
+
+            final Response snapshot = listener.resyncs.poll(5, TimeUnit.SECONDS);
+            assertNotNull(snapshot);
+            assertEquals(3, snapshot.getNode().getNodes().size());
+
+            etcdService.put("4", "watched", "d");
+            assertEvent(listener.events.poll(5, TimeUnit.SECONDS), "set", "/watched/d");
+            assertTrue(listener.events.isEmpty());
+        }
+    }
+
+    @Test
+    public void testResumesBeyondIntRange() throws Exception {
+        server.setIndex(3000000000L);
+
+        final RecordingListener listener = new RecordingListener();
+        try (EtcdWatch watch = etcdService.watch("watched")) {
+            watch.addListener(listener);
+            watch.start();
+
+            server.putValue("/watched/a", "1");
+            server.putValue("/watched/b", "2");
+            assertEvent(listener.events.poll(5, TimeUnit.SECONDS), "set", "/watched/a");
+            assertEvent(listener.events.poll(5, TimeUnit.SECONDS), "set", "/watched/b");
+            assertEquals(3000000003L, watch.getWaitIndex());
+            assertTrue(listener.resyncs.isEmpty());
+        }
+    }
+
+    private static void assertEvent(Response event, String action, String key) {
+        assertNotNull(event);
+        assertEquals(action, event.getAction());
+        assertEquals(key, event.getNode().getKey());
+    }
+
+    private static class RecordingListener implements WatchListener {
+        final BlockingQueue<Response> events = new LinkedBlockingQueue<>();
+        final BlockingQueue<Response> resyncs = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onEvent(Response event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onResync(Response snapshot) {
+            resyncs.add(snapshot);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package me.itzg.etcd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/12/2015
+ */
+public class KeyRefresherTest {
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+    private KeyRefresher refresher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        etcdService = new EtcdService(new URI[]{server.getUri()}, new TransportSettings());
+        final RefresherSettings settings = new RefresherSettings();
+        settings.setTickDuration(20);
+        settings.setWheelSize(16);
+        settings.setRetryDelay(100);
+        refresher = etcdService.createRefresher(settings);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        refresher.close();
+        etcdService.close();
+        server.stop();
+    }
+
+    @Test
+    public void testKeepsKeysAlive() throws Exception {
+        for (int i = 0; i < 50; ++i) {
+            refresher.register("instance-" + i, 1, "services", "api", String.valueOf(i));
+        }
+        final String[] existing = {"services", "api", "existing"};
+        etcdService.putIfNotExists("instance-x", 1, existing);
+        refresher.register(etcdService.get(existing));
+        assertEquals(51, refresher.size());
+
+        Thread.sleep(2500);
+
+        assertEquals(51, etcdService.get("services", "api").getNodes().size());
+        assertEquals("instance-7", etcdService.get("services", "api", "7").getValue());
+        assertEquals("instance-x", etcdService.get(existing).getValue());
+    }
+
+    @Test
+    public void testRecreatesLostKey() throws Exception {
+        refresher.register("instance-1", 1, "services", "api", "1");
+        etcdService.deleteKey("/services/api/1");
+        assertNull(etcdService.get("services", "api", "1"));
+
+        Thread.sleep(1000);
+
+        assertEquals("instance-1", etcdService.get("services", "api", "1").getValue());
+        assertEquals(1, etcdService.get("services", "api", "1").getTtl());
+    }
+
+    @Test
+    public void testRetriesAfterFailedBatch() throws Exception {
+        final AtomicInteger failures = new AtomicInteger(1);
+        final EtcdService flaky = new EtcdService(new URI[]{server.getUri()}, new TransportSettings()) {
+            @Override
+            List<BatchResult> execute(EtcdBatch batch, BatchSettings settings, ExecutorService executor)
+                    throws InterruptedException {
+                if (failures.getAndDecrement() > 0) {
+                    throw new ResourceAccessException("Connection reset");
+                }
+                return super.execute(batch, settings, executor);
+            }
+        };
+        final RefresherSettings settings = new RefresherSettings();
+        settings.setTickDuration(20);
+        settings.setRetryDelay(100);
+        try (KeyRefresher flakyRefresher = flaky.createRefresher(settings)) {
+            flakyRefresher.register("instance-1", 1, "services", "api", "1");
+
+            Thread.sleep(2500);
+
+            assertTrue(failures.get() < 0);
+            assertEquals("instance-1", etcdService.get("services", "api", "1").getValue());
+        } finally {
+            flaky.close();
+        }
+    }
+
+    @Test
+    public void testUnregister() throws Exception {
+        refresher.register("instance-1", 1, "services", "api", "1");
+        assertTrue(refresher.isRegistered("services", "api", "1"));
+
+        assertTrue(refresher.unregister("services", "api", "1"));
+        assertFalse(refresher.unregister("services", "api", "1"));
+        assertFalse(refresher.isRegistered("services", "api", "1"));
+        assertNull(etcdService.get("services", "api", "1"));
+
+        Thread.sleep(800);
+        // not re-created, since it is no longer registered
+        assertNull(etcdService.get("services", "api", "1"));
+    }
+}
@@ -0,0 +1,66 @@
+package me.itzg.etcd;
+
+import org.junit.Test;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/4/2015
+ */
+public class KeyUrisTest {
+    private static final URI MACHINE = URI.create("http://localhost:2379");
+
+    private final KeyUris keyUris = new KeyUris(new URI[]{MACHINE});
+
+    @Test
+    public void testBuildMatchesUriComponentsBuilder() throws Exception {
+        assertSameAsBuilder("config", "a");
+        assertSameAsBuilder("/config/", "nested/b/");
+        assertSameAsBuilder("/a//b", "c d");
+        assertSameAsBuilder("/");
+        assertSameAsBuilder("\u00fc%?#", "+;=@:");
+        assertSameAsBuilder("emoji\ud83d\ude00");
+    }
+
+    @Test
+    public void testQueryParams() throws Exception {
+        assertEquals(URI.create("http://localhost:2379/v2/keys/a?wait=true&recursive=true"),
+                keyUris.build(MACHINE, new String[]{"a"},
+                        "wait", "true",
+                        null, "skipped",
+                        "recursive", "true"));
+        assertEquals(URI.create("http://localhost:2379/v2/keys/a/b?prevValue=x%20y%26z"),
+                keyUris.buildKey(MACHINE, "/a/b", "prevValue", "x y&z"));
+    }
+
+    @Test
+    public void testCallerPathIsNotModified() throws Exception {
+        final String[] path = {"config", "a"};
+        keyUris.build(MACHINE, path);
+        assertArrayEquals(new String[]{"config", "a"}, path);
+    }
+
+    @Test
+    public void testUnknownMachineAndTrailingSeparator() throws Exception {
+        final URI other = URI.create("http://other:4001/");
+        assertEquals(URI.create("http://other:4001/v2/keys/a"), keyUris.buildKey(other, "a"));
+    }
+
+    private void assertSameAsBuilder(String... path) {
+        final String[] copy = path.clone();
+        if (!copy[0].startsWith(EtcdService.SEP)) {
+            copy[0] = EtcdService.SEP + copy[0];
+        }
+        final URI expected = UriComponentsBuilder.fromUri(MACHINE)
+                .path("/v2/keys")
+                .path(EtcdUtils.join(copy))
+                .build().toUri();
+
+        // the builder leaves non-ASCII characters for the transport to encode, so compare what goes on the wire
+        assertEquals(expected.toASCIIString(), keyUris.build(MACHINE, path).toASCIIString());
+    }
+}
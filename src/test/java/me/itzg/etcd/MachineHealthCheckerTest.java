@@ -0,0 +1,184 @@
+package me.itzg.etcd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/2/2015
+ */
+public class MachineHealthCheckerTest {
+
+    private StubEtcdServer first;
+    private StubEtcdServer second;
+
+    @Before
+    public void setUp() throws Exception {
+        first = new StubEtcdServer();
+        second = new StubEtcdServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        first.stop();
+        second.stop();
+    }
+
+    @Test
+    public void testReadsBalancedAcrossMachines() throws Exception {
+        first.putValue("/key", "1");
+        second.putValue("/key", "1");
+
+        try (EtcdService etcdService = new EtcdService(new URI[]{first.getUri(), second.getUri()}, new TransportSettings())) {
+            etcdService.setReadSelector(MachineSelectors.roundRobin());
+            for (int i = 0; i < 10; ++i) {
+                etcdService.get("key");
+            }
+        }
+
+        assertEquals(5, first.getRequestCount());
+        assertEquals(5, second.getRequestCount());
+    }
+
+    @Test
+    public void testUnreachableMachineEjected() throws Exception {
+        final StubEtcdServer stopped = new StubEtcdServer();
+        final URI stoppedUri = stopped.getUri();
+        stopped.stop();
+        first.putValue("/key", "1");
+
+        try (EtcdService etcdService = new EtcdService(new URI[]{stoppedUri, first.getUri()}, new TransportSettings())) {
+            etcdService.setReadSelector(MachineSelectors.roundRobin());
+            etcdService.setEjectionTime(200);
+
+            for (int i = 0; i < 10; ++i) {
+                assertEquals("1", etcdService.get("key").getValue());
+            }
+            assertEquals(10, first.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testHealthChecksEjectAndFindLeader() throws Exception {
+        final StubEtcdServer stopped = new StubEtcdServer();
+        final URI stoppedUri = stopped.getUri();
+        stopped.stop();
+        second.setLeader(true);
+
+        try (EtcdService etcdService = new EtcdService(new URI[]{stoppedUri, first.getUri(), second.getUri()},
+                new TransportSettings())) {
+            etcdService.setWritesToLeader(true);
+            etcdService.setReadSelector(MachineSelectors.leastOutstanding());
+            etcdService.startHealthChecks(50);
+            // wait for the leader to have been probed at least once
+            for (int i = 0; i < 50 && second.getRequestCount() < 2; ++i) {
+                Thread.sleep(100);
+            }
+
+            etcdService.put("1", "key");
+            assertEquals("1", second.getValueOf("/key"));
+            assertNull(first.getValueOf("/key"));
+
+            // the stopped machine was ejected by the probes rather than by a failed read
+            for (int i = 0; i < 4; ++i) {
+                etcdService.get("key");
+            }
+        }
+        assertTrue(first.getRequestCount() > 0);
+        assertTrue(second.getRequestCount() > 0);
+    }
+
+    @Test
+    public void testProbeFailureMovesWrites() throws Exception {
+        first.setHealthy(false);
+
+        try (EtcdService etcdService = new EtcdService(new URI[]{first.getUri(), second.getUri()})) {
+            etcdService.startHealthChecks(50);
+            for (int i = 0; i < 50 && !etcdService.isEjected(first.getUri()); ++i) {
+                Thread.sleep(100);
+            }
+            assertTrue(etcdService.isEjected(first.getUri()));
+
+            etcdService.put("1", "key");
+            assertEquals("1", second.getValueOf("/key"));
+            assertNull(first.getValueOf("/key"));
+        }
+    }
+
+    @Test
+    public void testProbeOfUnresponsiveMachineTimesOut() throws Exception {
+        // accepts connections into its backlog but never answers them
+        try (ServerSocket blackhole = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+             EtcdService etcdService = new EtcdService(new URI[]{
+                     URI.create("http://127.0.0.1:" + blackhole.getLocalPort()), first.getUri()})) {
+            final URI blackholeUri = etcdService.getMachines().get(0);
+            etcdService.startHealthChecks(50);
+
+            for (int i = 0; i < 50 && !etcdService.isEjected(blackholeUri); ++i) {
+                Thread.sleep(100);
+            }
+            assertTrue(etcdService.isEjected(blackholeUri));
+
+            // and the probes carry on
+            final int probes = first.getRequestCount();
+            for (int i = 0; i < 50 && first.getRequestCount() == probes; ++i) {
+                Thread.sleep(100);
+            }
+            assertTrue(first.getRequestCount() > probes);
+        }
+    }
+
+    @Test
+    public void testWatchNotCountedBySelector() throws Exception {
+        first.putValue("/key", "1");
+        second.putValue("/key", "1");
+
+        final MachineSelector leastOutstanding = MachineSelectors.leastOutstanding();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger outstanding = new AtomicInteger();
+        final TransportSettings settings = new TransportSettings();
+        settings.setReadTimeout(500);
+        try (EtcdService etcdService = new EtcdService(new URI[]{first.getUri(), second.getUri()}, settings)) {
+            etcdService.setReadSelector(new MachineSelector() {
+                @Override
+                public URI select(List<URI> candidates) {
+                    return leastOutstanding.select(candidates);
+                }
+
+                @Override
+                public void requestStarted(URI machine) {
+                    started.incrementAndGet();
+                    outstanding.incrementAndGet();
+                    leastOutstanding.requestStarted(machine);
+                }
+
+                @Override
+                public void requestCompleted(URI machine, long elapsedNanos, boolean succeeded) {
+                    outstanding.decrementAndGet();
+                    leastOutstanding.requestCompleted(machine, elapsedNanos, succeeded);
+                }
+            });
+
+            try (EtcdWatch watch = etcdService.watch("key")) {
+                watch.start(first.getIndex() + 1);
+                // let the long-poll become outstanding and time out at least once
+                Thread.sleep(700);
+
+                for (int i = 0; i < 4; ++i) {
+                    assertEquals("1", etcdService.get("key").getValue());
+                }
+                assertEquals(4, started.get());
+                assertEquals(0, outstanding.get());
+            }
+        }
+    }
+}
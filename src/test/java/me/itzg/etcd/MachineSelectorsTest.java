@@ -0,0 +1,60 @@
+package me.itzg.etcd;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/2/2015
+ */
+public class MachineSelectorsTest {
+    private static final URI ONE = URI.create("http://one:2379");
+    private static final URI TWO = URI.create("http://two:2379");
+    private static final List<URI> BOTH = Arrays.asList(ONE, TWO);
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        final MachineSelector selector = MachineSelectors.roundRobin();
+        assertEquals(ONE, selector.select(BOTH));
+        assertEquals(TWO, selector.select(BOTH));
+        assertEquals(ONE, selector.select(BOTH));
+    }
+
+    @Test
+    public void testLeastOutstanding() throws Exception {
+        final MachineSelector selector = MachineSelectors.leastOutstanding();
+        selector.requestStarted(ONE);
+        selector.requestStarted(ONE);
+        selector.requestStarted(TWO);
+        assertEquals(TWO, selector.select(BOTH));
+
+        selector.requestCompleted(ONE, 0, true);
+        selector.requestCompleted(ONE, 0, true);
+        assertEquals(ONE, selector.select(BOTH));
+    }
+
+    @Test
+    public void testLatencyEwma() throws Exception {
+        final MachineSelector selector = MachineSelectors.latencyEwma(0.5);
+        selector.requestStarted(ONE);
+        selector.requestCompleted(ONE, 1000000, true);
+        // unmeasured machines get sampled first
+        assertEquals(TWO, selector.select(BOTH));
+
+        selector.requestStarted(TWO);
+        selector.requestCompleted(TWO, 5000000, true);
+        assertEquals(ONE, selector.select(BOTH));
+
+        // a run of slow responses shifts the preference
+        for (int i = 0; i < 5; ++i) {
+            selector.requestStarted(ONE);
+            selector.requestCompleted(ONE, 20000000, true);
+        }
+        assertEquals(TWO, selector.select(BOTH));
+    }
+}
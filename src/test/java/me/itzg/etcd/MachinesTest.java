@@ -0,0 +1,98 @@
+package me.itzg.etcd;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/3/2015
+ */
+public class MachinesTest {
+    private static final URI ONE = URI.create("http://one:2379");
+    private static final URI TWO = URI.create("http://two:2379");
+    private static final URI THREE = URI.create("http://three:2379");
+
+    @Test
+    public void testFailoverRotatesToNextHealthy() throws Exception {
+        final Machines machines = new Machines(new URI[]{ONE, TWO, THREE});
+        machines.eject(TWO);
+
+        final Machines.Sticky observed = machines.sticky();
+        assertEquals(ONE, machines.forWrite(observed));
+        machines.failover(ONE, observed);
+
+        assertEquals(THREE, machines.forWrite(machines.sticky()));
+        assertEquals(1, machines.sticky().epoch);
+    }
+
+    @Test
+    public void testFailureOfOtherMachineKeepsSticky() throws Exception {
+        final Machines machines = new Machines(new URI[]{ONE, TWO, THREE});
+
+        machines.failover(TWO, machines.sticky());
+
+        assertEquals(ONE, machines.sticky().machine);
+        assertTrue(machines.isEjected(TWO));
+    }
+
+    @Test
+    public void testStaleSnapshotDoesNotRotateAgain() throws Exception {
+        final Machines machines = new Machines(new URI[]{ONE, TWO});
+        machines.setEjectionTime(0);
+
+        final Machines.Sticky stale = machines.sticky();
+        machines.failover(ONE, stale);
+        machines.failover(TWO, machines.sticky());
+        // writes are back on ONE, so a late report of the original failure must not move them
+        assertEquals(ONE, machines.sticky().machine);
+
+        machines.failover(ONE, stale);
+        assertEquals(ONE, machines.sticky().machine);
+        assertEquals(2, machines.sticky().epoch);
+    }
+
+    @Test
+    public void testConcurrentFailuresRotateOncePerObservedFailure() throws Exception {
+        final Machines machines = new Machines(new URI[]{ONE, TWO, THREE});
+        machines.setEjectionTime(0);
+
+        final int threads = 32;
+        final int rounds = 200;
+        final CyclicBarrier observedBarrier = new CyclicBarrier(threads);
+        final CyclicBarrier failedBarrier = new CyclicBarrier(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        for (int t = 0; t < threads; ++t) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int round = 0; round < rounds; ++round) {
+                            final Machines.Sticky observed = machines.sticky();
+                            observedBarrier.await();
+                            // every thread saw the same machine fail in this round
+                            machines.failover(machines.forWrite(observed), observed);
+                            failedBarrier.await();
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        done.await();
+        assertNull(error.get());
+        assertEquals(rounds, machines.sticky().epoch);
+        assertEquals(new URI[]{ONE, TWO, THREE}[rounds % 3], machines.sticky().machine);
+    }
+}
@@ -0,0 +1,210 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/16/2015
+ */
+public class ReactiveEtcdServiceTest {
+
+    private StubEtcdServer server;
+    private AsyncEtcdService asyncEtcdService;
+    private ReactiveEtcdService etcdService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        asyncEtcdService = new AsyncEtcdService(new URI[]{server.getUri()});
+        etcdService = new ReactiveEtcdService(asyncEtcdService);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncEtcdService.close();
+        server.stop();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        server.putValue("/one", "value");
+
+        final RecordingSubscriber<Node> found = RecordingSubscriber.subscribe(etcdService.get("one"), 1);
+        found.awaitTermination();
+        assertEquals(1, found.items.size());
+        assertEquals("value", found.items.get(0).getValue());
+        assertNull(found.error);
+
+        final RecordingSubscriber<Node> missing = RecordingSubscriber.subscribe(etcdService.get("missing"), 1);
+        missing.awaitTermination();
+        assertTrue(missing.items.isEmpty());
+        assertNull(missing.error);
+    }
+
+    @Test
+    public void testListHonorsDemand() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            server.putValue("/dir/" + i, "v" + i);
+        }
+
+        final Publisher<Node> listing = etcdService.list(false, "dir");
+        assertEquals("nothing is sent until requested", 0, server.getRequestCount());
+
+        final RecordingSubscriber<Node> subscriber = RecordingSubscriber.subscribe(listing, 2);
+        subscriber.awaitItems(2);
+        Thread.sleep(100);
+        assertEquals(2, subscriber.items.size());
+        assertFalse(subscriber.isTerminated());
+
+        subscriber.subscription.request(10);
+        subscriber.awaitTermination();
+        assertEquals(5, subscriber.items.size());
+        assertEquals("v4", subscriber.items.get(4).getValue());
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testConditionalWrites() throws Exception {
+        final RecordingSubscriber<Boolean> created =
+                RecordingSubscriber.subscribe(etcdService.putIfNotExists("first", "cas"), 1);
+        created.awaitTermination();
+        assertEquals(true, created.items.get(0));
+
+        final RecordingSubscriber<Boolean> failed =
+                RecordingSubscriber.subscribe(etcdService.updateKeyAtomically("second", "wrong", "/cas"), 1);
+        failed.awaitTermination();
+        assertEquals(false, failed.items.get(0));
+
+        final RecordingSubscriber<Boolean> updated =
+                RecordingSubscriber.subscribe(etcdService.updateKeyAtomically("second", "first", "/cas"), 1);
+        updated.awaitTermination();
+        assertEquals(true, updated.items.get(0));
+        assertEquals("second", server.getValueOf("/cas"));
+    }
+
+    @Test
+    public void testSlowWatcherThrottlesPolling() throws Exception {
+        server.putDir("/busy");
+        final long fromIndex = server.getIndex() + 1;
+
+        final RecordingSubscriber<Response> subscriber =
+                RecordingSubscriber.subscribe(etcdService.watch(fromIndex, true, "busy"), 1);
+        server.putValue("/busy/0", "v0");
+        subscriber.awaitItems(1);
+
+        final int requestsBefore = server.getRequestCount();
+        for (int i = 1; i < 20; ++i) {
+            server.putValue("/busy/" + i, "v" + i);
+        }
+        Thread.sleep(300);
+        assertEquals("no poll without demand", requestsBefore, server.getRequestCount());
+        assertEquals(1, subscriber.items.size());
+
+        subscriber.subscription.request(19);
+        subscriber.awaitItems(20);
+        for (int i = 0; i < 20; ++i) {
+            assertEquals("v" + i, subscriber.items.get(i).getNode().getValue());
+        }
+        subscriber.subscription.cancel();
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testWatchFromNowKeepsItsPlaceAcrossTimeouts() throws Exception {
+        final TransportSettings settings = new TransportSettings();
+        settings.setReadTimeout(200);
+        try (AsyncEtcdService timingOut = new AsyncEtcdService(new URI[]{server.getUri()}, settings)) {
+            final RecordingSubscriber<Response> subscriber = RecordingSubscriber.subscribe(
+                    new ReactiveEtcdService(timingOut).watch(0, true, "later"), 1);
+            // outlast a few read timeouts
+            Thread.sleep(700);
+
+            server.putValue("/later/a", "1");
+            subscriber.awaitItems(1);
+            assertEquals("1", subscriber.items.get(0).getNode().getValue());
+            assertEquals(0, server.getPollsWithoutIndex());
+            subscriber.subscription.cancel();
+        }
+    }
+
+    @Test
+    public void testInvalidRequestFails() throws Exception {
+        final RecordingSubscriber<Node> subscriber = RecordingSubscriber.subscribe(etcdService.get("one"), 0);
+        subscriber.subscription.request(0);
+        subscriber.awaitTermination();
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    private static class RecordingSubscriber<T> implements Subscriber<T> {
+        final List<T> items = new CopyOnWriteArrayList<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final long initialRequest;
+        volatile Subscription subscription;
+        volatile Throwable error;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        static <T> RecordingSubscriber<T> subscribe(Publisher<T> publisher, long initialRequest) {
+            final RecordingSubscriber<T> subscriber = new RecordingSubscriber<>(initialRequest);
+            publisher.subscribe(subscriber);
+            return subscriber;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+
+        boolean isTerminated() {
+            return terminated.getCount() == 0;
+        }
+
+        void awaitTermination() throws InterruptedException {
+            assertTrue(terminated.await(5, TimeUnit.SECONDS));
+        }
+
+        void awaitItems(int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (items.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(count, items.size());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package me.itzg.etcd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/6/2015
+ */
+public class SimpleEtcdMetricsTest {
+
+    private StubEtcdServer server;
+    private SimpleEtcdMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+        metrics = new SimpleEtcdMetrics();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testOperationsAndConflicts() throws Exception {
+        try (EtcdService etcdService = new EtcdService(new URI[]{server.getUri()}, new TransportSettings())) {
+            etcdService.setMetrics(metrics);
+
+            etcdService.put("1", "key");
+            assertEquals("1", etcdService.get("key").getValue());
+            assertNull(etcdService.get("missing"));
+            assertTrue(etcdService.updateKeyAtomically("2", "1", "key"));
+            assertFalse(etcdService.updateKeyAtomically("3", "1", "key"));
+            assertFalse(etcdService.putIfNotExists("4", "key"));
+        }
+
+        assertEquals(1, metrics.getLatency(EtcdOperation.PUT).getCount());
+        assertEquals(2, metrics.getLatency(EtcdOperation.GET).getCount());
+        assertEquals(0, metrics.getFailures(EtcdOperation.GET));
+        assertEquals(0, metrics.getInFlight(EtcdOperation.GET));
+
+        assertEquals(1, metrics.getConditionApplied(EtcdOperation.UPDATE_KEY_ATOMICALLY));
+        assertEquals(1, metrics.getConditionConflicts(EtcdOperation.UPDATE_KEY_ATOMICALLY));
+        assertEquals(0.5, metrics.getConflictRatio(EtcdOperation.UPDATE_KEY_ATOMICALLY), 0.0);
+        assertEquals(1.0, metrics.getConflictRatio(EtcdOperation.PUT_IF_NOT_EXISTS), 0.0);
+    }
+
+    @Test
+    public void testFailoverCounted() throws Exception {
+        final StubEtcdServer stopped = new StubEtcdServer();
+        final URI stoppedUri = stopped.getUri();
+        stopped.stop();
+        server.putValue("/key", "1");
+
+        try (AsyncEtcdService etcdService = new AsyncEtcdService(new URI[]{stoppedUri, server.getUri()})) {
+            etcdService.setMetrics(metrics);
+            assertEquals("1", etcdService.get("key").get().getValue());
+        }
+
+        assertEquals(1, metrics.getFailovers(stoppedUri));
+        assertEquals(1, metrics.getMachineErrors(stoppedUri));
+        assertEquals(0, metrics.getMachineErrors(server.getUri()));
+        assertEquals(1, metrics.getLatency(EtcdOperation.GET).getCount());
+    }
+
+    @Test
+    public void testFailoverCountedOnlyWhenWritesMove() throws Exception {
+        final StubEtcdServer stopped = new StubEtcdServer();
+        final URI stoppedUri = stopped.getUri();
+        stopped.stop();
+        server.putValue("/key", "1");
+
+        try (EtcdService etcdService = new EtcdService(new URI[]{server.getUri(), stoppedUri})) {
+            etcdService.setMetrics(metrics);
+            etcdService.setReadSelector(MachineSelectors.roundRobin());
+            for (int i = 0; i < 4; ++i) {
+                assertEquals("1", etcdService.get("key").getValue());
+            }
+        }
+
+        // a read balanced onto the stopped machine didn't move writes, which stayed with the first
+        assertEquals(1, metrics.getMachineErrors(stoppedUri));
+        assertEquals(0, metrics.getFailovers(stoppedUri));
+    }
+
+    @Test
+    public void testRefreshIsNotConditional() throws Exception {
+        try (EtcdService etcdService = new EtcdService(new URI[]{server.getUri()})) {
+            etcdService.setMetrics(metrics);
+            etcdService.put("1", 30, "key");
+            assertTrue(etcdService.refresh(30, "key"));
+            assertFalse(etcdService.refresh(30, "missing"));
+        }
+
+        assertEquals(2, metrics.getLatency(EtcdOperation.REFRESH).getCount());
+        assertEquals(0, metrics.getConditionApplied(EtcdOperation.REFRESH));
+        assertEquals(0, metrics.getConditionConflicts(EtcdOperation.REFRESH));
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        for (int i = 0; i < 99; ++i) {
+            metrics.operationCompleted(EtcdOperation.GET, 500000, true);
+        }
+        metrics.operationCompleted(EtcdOperation.GET, 3000000000L, false);
+
+        final SimpleEtcdMetrics.LatencyHistogram latency = metrics.getLatency(EtcdOperation.GET);
+        assertEquals(100, latency.getCount());
+        assertEquals(1, metrics.getFailures(EtcdOperation.GET));
+        // 500us falls in the bucket below 512us and 3s in the bucket below 2^22us
+        assertEquals(512000, latency.getPercentileNanos(0.99));
+        assertEquals((1L << 22) * 1000, latency.getPercentileNanos(1.0));
+        assertEquals((99 * 500000L + 3000000000L) / 100, latency.getMeanNanos());
+    }
+}
@@ -0,0 +1,94 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/8/2015
+ */
+public class StreamingNodeReaderTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testLeavesWithAllFields() throws Exception {
+        final String json = "{\"action\":\"get\",\"node\":{\"key\":\"/dir\",\"dir\":true,\"nodes\":[" +
+                "{\"key\":\"/dir/a\",\"value\":\"1\",\"expiration\":\"2015-07-08T12:00:00.000Z\",\"ttl\":30," +
+                "\"modifiedIndex\":5,\"createdIndex\":4,\"unknown\":{\"nested\":[1,2]}}," +
+                "{\"key\":\"/dir/empty\",\"dir\":true,\"modifiedIndex\":6,\"createdIndex\":6}," +
+                "{\"key\":\"/dir/sub\",\"dir\":true,\"nodes\":[{\"key\":\"/dir/sub/b\",\"value\":\"2\"}]}" +
+                "],\"modifiedIndex\":2,\"createdIndex\":2}}";
+
+        final List<Node> leaves = new ArrayList<>();
+        final int count = new StreamingNodeReader(new NodeCallback() {
+            @Override
+            public void onLeaf(Node leaf) {
+                leaves.add(leaf);
+            }
+        }).read(new ByteArrayInputStream(json.getBytes(UTF_8)));
+
+        assertEquals(2, count);
+        final Node a = leaves.get(0);
+        assertEquals("/dir/a", a.getKey());
+        assertEquals("1", a.getValue());
+        assertEquals(30, a.getTtl());
+        assertEquals(5, a.getModifiedIndex());
+        assertEquals(4, a.getCreatedIndex());
+        assertEquals(1436356800000L, a.getExpiration().getTime());
+        assertEquals("/dir/sub/b", leaves.get(1).getKey());
+    }
+
+    @Test
+    public void testLargeDirectoryIsNotRetained() throws Exception {
+        final int total = 200000;
+        final int[] count = {0};
+        new StreamingNodeReader(new NodeCallback() {
+            @Override
+            public void onLeaf(Node leaf) {
+                assertEquals("value" + count[0], leaf.getValue());
+                ++count[0];
+            }
+        }).read(generate(total));
+
+        assertEquals(total, count[0]);
+    }
+
+    /**
+     * @return a directory of the given number of leaves, generated as it is read
+     */
+    private static InputStream generate(final int leaves) {
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private int next = -1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next <= leaves;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                final String chunk;
+                if (next == -1) {
+                    chunk = "{\"action\":\"get\",\"node\":{\"key\":\"/big\",\"dir\":true,\"nodes\":[";
+                } else if (next == leaves) {
+                    chunk = "]}}";
+                } else {
+                    chunk = (next > 0 ? "," : "") +
+                            "{\"key\":\"/big/key" + next + "\",\"value\":\"value" + next + "\",\"modifiedIndex\":" + next + "}";
+                }
+                ++next;
+                return new ByteArrayInputStream(chunk.getBytes(UTF_8));
+            }
+        });
+    }
+}
@@ -0,0 +1,576 @@
+package me.itzg.etcd;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import me.itzg.etcd.keys.Node;
+import me.itzg.etcd.keys.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process stand-in for the etcd v2 keys API, good enough to exercise {@link EtcdService}
+ * without a real cluster.
+ *
+ * @author Geoff Bourne
+ * @since 6/27/2015
+ */
+public class StubEtcdServer implements HttpHandler {
+    private static final String KEYS_PREFIX = "/v2/keys";
+    private static final String STATS_SELF_PATH = "/v2/stats/self";
+    private static final long EXPIRY_CHECK_INTERVAL = 50;
+
+    static {
+        // otherwise each response waits on the client's delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    private final LinkedList<Response> history = new LinkedList<>();
+    private final Set<Integer> remotePorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger delayedReads = new AtomicInteger();
+    private final AtomicInteger pollsWithoutIndex = new AtomicInteger();
+    private final AtomicInteger maxDelayedReads = new AtomicInteger();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private long index = 1;
+    private int historyLimit = 1000;
+    /**
+     * The highest index of the events that have been dropped from the history
+     */
+    private long clearedThrough;
+    private volatile boolean leader;
+    private volatile boolean healthy = true;
+    private volatile long readDelay;
+
+    public StubEtcdServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI getUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the distinct client-side ports seen, which is the number of connections opened
+     */
+    public Set<Integer> getRemotePorts() {
+        return remotePorts;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the long-polls that waited for the next change from now rather than from a given index
+     */
+    public int getPollsWithoutIndex() {
+        return pollsWithoutIndex.get();
+    }
+
+    /**
+     * @return the most plain reads that were held by the read delay at the same time
+     */
+    public int getMaxConcurrentReads() {
+        return maxDelayedReads.get();
+    }
+
+    public synchronized void putValue(String key, String value) {
+        key = normalize(key);
+        recordEvent("set", key, set(key, value, false));
+    }
+
+    public synchronized void putDir(String key) {
+        key = normalize(key);
+        recordEvent("set", key, set(key, null, true));
+    }
+
+    public synchronized String getValueOf(String key) {
+        expireDue();
+        final Entry entry = entries.get(normalize(key));
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * @param readDelay in milliseconds that each plain read is held before being answered
+     */
+    public void setReadDelay(long readDelay) {
+        this.readDelay = readDelay;
+    }
+
+    public void setLeader(boolean leader) {
+        this.leader = leader;
+    }
+
+    /**
+     * @param healthy if false, health probes are answered with a server error while keys are still served
+     */
+    public void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    public synchronized long getIndex() {
+        return index;
+    }
+
+    /**
+     * @param index the current etcd index, such as one beyond the range of an int
+     */
+    public synchronized void setIndex(long index) {
+        this.index = index;
+    }
+
+    /**
+     * @param historyLimit the number of events retained for watchers, like etcd's limit of 1000
+     */
+    public synchronized void setHistoryLimit(int historyLimit) {
+        this.historyLimit = historyLimit;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        remotePorts.add(exchange.getRemoteAddress().getPort());
+        requestCount.incrementAndGet();
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            if (path.equals(STATS_SELF_PATH)) {
+                if (!healthy) {
+                    send(exchange, 500, null);
+                    return;
+                }
+                final byte[] body = objectMapper.writeValueAsBytes(
+                        Collections.singletonMap("state", leader ? "StateLeader" : "StateFollower"));
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                return;
+            }
+            if (!path.startsWith(KEYS_PREFIX)) {
+                send(exchange, 404, null);
+                return;
+            }
+            final String key = normalize(path.substring(KEYS_PREFIX.length()));
+            final Map<String, String> params = parseForm(exchange.getRequestURI().getRawQuery());
+            params.putAll(parseForm(readBody(exchange.getRequestBody())));
+
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    handleGet(exchange, key, params);
+                    break;
+                case "PUT":
+                    handlePut(exchange, key, params);
+                    break;
+                case "POST":
+                    handlePost(exchange, key, params);
+                    break;
+                case "DELETE":
+                    handleDelete(exchange, key, params);
+                    break;
+                default:
+                    send(exchange, 405, null);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleGet(HttpExchange exchange, String key, Map<String, String> params) throws IOException {
+        if (Boolean.parseBoolean(params.get("wait"))) {
+            handleWait(exchange, key, params);
+            return;
+        }
+
+        if (readDelay > 0) {
+            final int concurrent = delayedReads.incrementAndGet();
+            int max;
+            while ((max = maxDelayedReads.get()) < concurrent && !maxDelayedReads.compareAndSet(max, concurrent)) {
+                // retry
+            }
+            try {
+                Thread.sleep(readDelay);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                delayedReads.decrementAndGet();
+            }
+        }
+
+        final Response response = new Response();
+        synchronized (this) {
+            final Entry entry = lookup(key);
+            if (entry == null) {
+                sendError(exchange, 404, EtcdError.EcodeKeyNotFound, key);
+                return;
+            }
+            response.setAction("get");
+            response.setNode(toNode(key, entry, Boolean.parseBoolean(params.get("recursive")), true));
+        }
+        send(exchange, 200, response);
+    }
+
+    private void handleWait(HttpExchange exchange, String key, Map<String, String> params) throws IOException {
+        final boolean recursive = Boolean.parseBoolean(params.get("recursive"));
+        if (!params.containsKey("waitIndex")) {
+            pollsWithoutIndex.incrementAndGet();
+        }
+        Response event;
+        synchronized (this) {
+            final long waitIndex = params.containsKey("waitIndex") ? Long.parseLong(params.get("waitIndex")) : index + 1;
+            if (waitIndex <= clearedThrough) {
+                sendError(exchange, 400, EtcdError.EcodeEventIndexCleared, key);
+                return;
+            }
+            while ((event = findEvent(key, recursive, waitIndex)) == null) {
+                try {
+                    // wakes periodically to notice keys expiring
+                    wait(EXPIRY_CHECK_INTERVAL);
+                    expireDue();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+        send(exchange, 200, event);
+    }
+
+    private Response findEvent(String key, boolean recursive, long waitIndex) {
+        for (Response event : history) {
+            final String eventKey = event.getNode().getKey();
+            if (event.getNode().getModifiedIndex() >= waitIndex
+                    && (eventKey.equals(key)
+                    || recursive && (key.equals("/") || eventKey.startsWith(key + "/")))) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private void recordEvent(String action, String key, Entry entry) {
+        final Response event = new Response();
+        event.setAction(action);
+        event.setNode(toNode(key, entry, false, false));
+        recordEvent(event);
+    }
+
+    private void recordEvent(Response event) {
+        history.add(event);
+        while (history.size() > historyLimit) {
+            clearedThrough = history.removeFirst().getNode().getModifiedIndex();
+        }
+        notifyAll();
+    }
+
+    private void handlePut(HttpExchange exchange, String key, Map<String, String> params) throws IOException {
+        final Response response = new Response();
+        final boolean created;
+        synchronized (this) {
+            final Entry existing = lookup(key);
+            final String prevExist = params.get("prevExist");
+            final String prevIndex = params.get("prevIndex");
+            final String prevValue = params.get("prevValue");
+
+            if ("false".equals(prevExist) && existing != null) {
+                sendError(exchange, 412, EtcdError.EcodeNodeExist, key);
+                return;
+            }
+            if ((prevIndex != null || prevValue != null || "true".equals(prevExist)) && existing == null) {
+                sendError(exchange, 404, EtcdError.EcodeKeyNotFound, key);
+                return;
+            }
+            if (Boolean.parseBoolean(params.get("refresh"))) {
+                if (existing == null) {
+                    sendError(exchange, 404, EtcdError.EcodeKeyNotFound, key);
+                    return;
+                }
+                // a refresh only extends the TTL and, like etcd, doesn't notify watchers
+                setTtl(existing, params.get("ttl"));
+                response.setAction("update");
+                response.setNode(toNode(key, existing, false, false));
+                send(exchange, 200, response);
+                return;
+            }
+            if ((prevIndex != null && Long.parseLong(prevIndex) != existing.modifiedIndex)
+                    || (prevValue != null && !prevValue.equals(existing.value))) {
+                sendError(exchange, 412, EtcdError.EcodeTestFailed, key);
+                return;
+            }
+            if (existing != null && existing.dir) {
+                sendError(exchange, 403, EtcdError.EcodeNotFile, key);
+                return;
+            }
+
+            created = existing == null;
+            if (existing != null) {
+                response.setPrevNode(toNode(key, existing, false, false));
+            }
+            final Entry entry = set(key, params.get("value"), Boolean.parseBoolean(params.get("dir")));
+            setTtl(entry, params.get("ttl"));
+            response.setAction(prevIndex != null || prevValue != null ? "compareAndSwap"
+                    : "false".equals(prevExist) ? "create"
+                    : "true".equals(prevExist) ? "update"
+                    : "set");
+            response.setNode(toNode(key, entry, false, false));
+            recordEvent(response);
+        }
+        send(exchange, created ? 201 : 200, response);
+    }
+
+    private void handlePost(HttpExchange exchange, String dirKey, Map<String, String> params) throws IOException {
+        final Response response = new Response();
+        synchronized (this) {
+            final Entry dir = lookup(dirKey);
+            if (dir != null && !dir.dir) {
+                sendError(exchange, 403, EtcdError.EcodeNotDir, dirKey);
+                return;
+            }
+            final String key = (dirKey.equals("/") ? "" : dirKey) + String.format("/%020d", index + 1);
+            final Entry entry = set(key, params.get("value"), false);
+            setTtl(entry, params.get("ttl"));
+            response.setAction("create");
+            response.setNode(toNode(key, entry, false, false));
+            recordEvent(response);
+        }
+        send(exchange, 201, response);
+    }
+
+    private void handleDelete(HttpExchange exchange, String key, Map<String, String> params) throws IOException {
+        final Response response = new Response();
+        synchronized (this) {
+            final Entry existing = lookup(key);
+            if (existing == null) {
+                sendError(exchange, 404, EtcdError.EcodeKeyNotFound, key);
+                return;
+            }
+            final String prevIndex = params.get("prevIndex");
+            if (prevIndex != null && Long.parseLong(prevIndex) != existing.modifiedIndex) {
+                sendError(exchange, 412, EtcdError.EcodeTestFailed, key);
+                return;
+            }
+            entries.subMap(key, key + "/\uffff").clear();
+            entries.remove(key);
+            final Node deleted = new Node();
+            deleted.setKey(key);
+            deleted.setDir(existing.dir);
+            deleted.setCreatedIndex(existing.createdIndex);
+            deleted.setModifiedIndex(++index);
+            response.setAction(prevIndex != null ? "compareAndDelete" : "delete");
+            response.setNode(deleted);
+            response.setPrevNode(toNode(key, existing, false, false));
+            recordEvent(response);
+        }
+        send(exchange, 200, response);
+    }
+
+    private Entry lookup(String key) {
+        expireDue();
+        if (key.equals("/")) {
+            final Entry root = new Entry();
+            root.dir = true;
+            return root;
+        }
+        return entries.get(key);
+    }
+
+    private void setTtl(Entry entry, String ttl) {
+        if (ttl != null && !ttl.isEmpty()) {
+            entry.ttl = Integer.parseInt(ttl);
+            entry.expiresAt = System.currentTimeMillis() + entry.ttl * 1000L;
+        } else {
+            entry.ttl = 0;
+            entry.expiresAt = 0;
+        }
+    }
+
+    /**
+     * Removes the keys whose TTL has run out, recording an "expire" event for each like etcd does
+     */
+    private void expireDue() {
+        final long now = System.currentTimeMillis();
+        List<String> expired = null;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().expiresAt != 0 && entry.getValue().expiresAt <= now) {
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(entry.getKey());
+            }
+        }
+        if (expired == null) {
+            return;
+        }
+        for (String key : expired) {
+            final Entry existing = entries.get(key);
+            if (existing == null) {
+                continue;
+            }
+            entries.subMap(key, key + "/\uffff").clear();
+            entries.remove(key);
+            final Response event = new Response();
+            final Node node = new Node();
+            node.setKey(key);
+            node.setDir(existing.dir);
+            node.setCreatedIndex(existing.createdIndex);
+            node.setModifiedIndex(++index);
+            event.setAction("expire");
+            event.setNode(node);
+            event.setPrevNode(toNode(key, existing, false, false));
+            recordEvent(event);
+        }
+    }
+
+    private Entry set(String key, String value, boolean dir) {
+        // etcd implicitly creates the parent directories
+        for (int pos = key.indexOf('/', 1); pos > 0; pos = key.indexOf('/', pos + 1)) {
+            final String parent = key.substring(0, pos);
+            if (!entries.containsKey(parent)) {
+                final Entry parentEntry = new Entry();
+                parentEntry.dir = true;
+                parentEntry.createdIndex = parentEntry.modifiedIndex = index;
+                entries.put(parent, parentEntry);
+            }
+        }
+
+        final Entry existing = entries.get(key);
+        final Entry entry = new Entry();
+        entry.value = value;
+        entry.dir = dir;
+        entry.modifiedIndex = ++index;
+        entry.createdIndex = existing != null ? existing.createdIndex : entry.modifiedIndex;
+        entries.put(key, entry);
+        return entry;
+    }
+
+    private Node toNode(String key, Entry entry, boolean recursive, boolean includeChildren) {
+        final Node node = new Node();
+        node.setKey(key);
+        node.setDir(entry.dir);
+        node.setValue(entry.value);
+        node.setCreatedIndex(entry.createdIndex);
+        node.setModifiedIndex(entry.modifiedIndex);
+        if (entry.expiresAt != 0) {
+            node.setTtl(entry.ttl);
+            node.setExpiration(new Date(entry.expiresAt));
+        }
+        if (entry.dir && includeChildren) {
+            final List<Node> children = new ArrayList<>();
+            final String childPrefix = key.equals("/") ? "/" : key + "/";
+            for (Map.Entry<String, Entry> child : entries.tailMap(childPrefix, false).entrySet()) {
+                final String childKey = child.getKey();
+                if (!childKey.startsWith(childPrefix)) {
+                    break;
+                }
+                if (childKey.indexOf('/', childPrefix.length()) < 0) {
+                    children.add(toNode(childKey, child.getValue(), recursive, recursive));
+                }
+            }
+            node.setNodes(children);
+        }
+        return node;
+    }
+
+    private void sendError(HttpExchange exchange, int status, EtcdError error, String key) throws IOException {
+        final Response response = new Response();
+        response.setErrorCode(error.getCode());
+        response.setMessage(error.getStrerror());
+        response.setCause(key);
+        response.setIndex(index);
+        send(exchange, status, response);
+    }
+
+    private void send(HttpExchange exchange, int status, Response response) throws IOException {
+        exchange.getResponseHeaders().add("X-Etcd-Index", String.valueOf(index));
+        if (response == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        final byte[] body = objectMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String normalize(String key) {
+        if (!key.startsWith("/")) {
+            key = "/" + key;
+        }
+        while (key.length() > 1 && key.endsWith("/")) {
+            key = key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int len;
+        while ((len = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, len);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static Map<String, String> parseForm(String encoded) throws IOException {
+        final Map<String, String> params = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return params;
+        }
+        for (String pair : encoded.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq < 0) {
+                params.put(URLDecoder.decode(pair, "UTF-8"), "");
+            } else {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static class Entry {
+        String value;
+        boolean dir;
+        long createdIndex;
+        long modifiedIndex;
+        int ttl;
+        long expiresAt;
+    }
+}
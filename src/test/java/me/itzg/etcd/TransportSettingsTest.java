@@ -0,0 +1,93 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 6/27/2015
+ */
+public class TransportSettingsTest {
+
+    private StubEtcdServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testPooledConnectionsAreReused() throws Exception {
+        final TransportSettings settings = new TransportSettings();
+        settings.setMaxConnectionsPerMachine(1);
+
+        try (EtcdService etcdService = new EtcdService(new URI[]{server.getUri()}, settings)) {
+            etcdService.put("value", "one", "two");
+            for (int i = 0; i < 20; ++i) {
+                final Node node = etcdService.get("one", "two");
+                assertEquals("value", node.getValue());
+            }
+            assertNull(etcdService.get("one", "missing"));
+        }
+
+        assertEquals(22, server.getRequestCount());
+        assertEquals(1, server.getRemotePorts().size());
+    }
+
+    @Test
+    public void testWaitForPooledConnectionIsBounded() throws Exception {
+        final TransportSettings settings = new TransportSettings();
+        settings.setMaxConnectionsPerMachine(1);
+        settings.setConnectionRequestTimeout(100);
+        server.putValue("/one", "value");
+        server.setReadDelay(2000);
+
+        try (final EtcdService etcdService = new EtcdService(new URI[]{server.getUri()}, settings)) {
+            final Thread holder = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        etcdService.get("one");
+                    } catch (Exception e) {
+                        // only here to occupy the connection
+                    }
+                }
+            });
+            holder.start();
+            Thread.sleep(200);
+
+            final long start = System.currentTimeMillis();
+            try {
+                etcdService.get("one");
+                fail("Should not have been given a connection");
+            } catch (Exception e) {
+                assertTrue(System.currentTimeMillis() - start < 1500);
+            }
+            holder.join();
+        }
+    }
+
+    @Test
+    public void testFailoverToReachableMachine() throws Exception {
+        final StubEtcdServer stoppedServer = new StubEtcdServer();
+        final URI stoppedUri = stoppedServer.getUri();
+        stoppedServer.stop();
+
+        server.putValue("/one", "value");
+
+        try (EtcdService etcdService = new EtcdService(new URI[]{stoppedUri, server.getUri()}, new TransportSettings())) {
+            assertEquals("value", etcdService.get("one").getValue());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package me.itzg.etcd;
+
+import me.itzg.etcd.keys.Node;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs many blocking calls on virtual threads over a carrier pool much smaller than the connection pool. Had
+ * any of them pinned its carrier while waiting on etcd, at most that many reads could be in flight at once.
+ * Skipped on runtimes without virtual threads.
+ *
+ * @author Geoff Bourne
+ * @since 7/15/2015
+ */
+public class VirtualThreadLoadTest {
+    private static final int CARRIERS = 2;
+    private static final int CALLS = 10000;
+    private static final long READ_DELAY = 50;
+
+    private StubEtcdServer server;
+    private EtcdService etcdService;
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpCarriers() {
+        // only takes effect if nothing in this JVM has started a virtual thread yet
+        System.setProperty("jdk.virtualThreadScheduler.parallelism", String.valueOf(CARRIERS));
+        System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", String.valueOf(CARRIERS));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        executor = newVirtualThreadPerTaskExecutor();
+        Assume.assumeNotNull(executor);
+
+        server = new StubEtcdServer();
+        server.putValue("/hot", "value");
+        server.setReadDelay(READ_DELAY);
+        etcdService = new EtcdService(new URI[]{server.getUri()}, TransportSettings.forVirtualThreads());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (etcdService != null) {
+            etcdService.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testConcurrentGets() throws Exception {
+        final long start = System.nanoTime();
+        final List<Future<Node>> results = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; ++i) {
+            results.add(executor.submit(new Callable<Node>() {
+                @Override
+                public Node call() throws Exception {
+                    return etcdService.get("hot");
+                }
+            }));
+        }
+        for (Future<Node> result : results) {
+            assertEquals("value", result.get(2, TimeUnit.MINUTES).getValue());
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(server.getRequestCount() >= CALLS);
+        assertTrue("Only " + server.getMaxConcurrentReads() + " reads were in flight at once",
+                server.getMaxConcurrentReads() > CARRIERS * 10);
+        final long pinnedElapsed = CALLS * READ_DELAY / CARRIERS;
+        assertTrue("Took " + elapsed + "ms", elapsed < pinnedElapsed / 4);
+    }
+
+    /**
+     * @return null when the runtime predates virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package me.itzg.etcd.boot;
+
+import me.itzg.etcd.ComputeSettings;
+import me.itzg.etcd.EtcdCache;
+import me.itzg.etcd.EtcdMetrics;
+import me.itzg.etcd.EtcdOperation;
+import me.itzg.etcd.EtcdService;
+import me.itzg.etcd.SimpleEtcdMetrics;
+import me.itzg.etcd.StubEtcdServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/17/2015
+ */
+public class EtcdAutoConfigurationTest {
+
+    private StubEtcdServer server;
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEtcdServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (context != null) {
+            context.close();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void testServiceConfiguredFromProperties() throws Exception {
+        load("etcd.machines:" + server.getUri(),
+                "etcd.transport.max-connections-per-machine=5",
+                "etcd.transport.read-timeout=1000",
+                "etcd.retry.max-attempts=3",
+                "etcd.read-selector=ROUND_ROBIN",
+                "etcd.ejection-time=5000");
+
+        final EtcdService etcdService = context.getBean(EtcdService.class);
+        etcdService.put("value", "one");
+        assertEquals("value", etcdService.get("one").getValue());
+
+        final EtcdProperties properties = context.getBean(EtcdProperties.class);
+        assertEquals(5, properties.getTransport().getMaxConnectionsPerMachine());
+        assertEquals(1000, properties.getTransport().getReadTimeout());
+        assertEquals(EtcdProperties.ReadSelector.ROUND_ROBIN, properties.getReadSelector());
+        assertEquals(5000, properties.getEjectionTime());
+        assertEquals(3, context.getBean(ComputeSettings.class).getMaxAttempts());
+
+        final EtcdMetrics metrics = context.getBean(EtcdMetrics.class);
+        assertSame(metrics, etcdService.getMetrics());
+        assertEquals(1, ((SimpleEtcdMetrics) metrics).getLatency(EtcdOperation.PUT).getCount());
+        assertTrue(context.getBeansOfType(EtcdCache.class).isEmpty());
+    }
+
+    @Test
+    public void testHealthAndMetrics() throws Exception {
+        server.putValue("/config/a", "1");
+        load("etcd.machines:" + server.getUri(),
+                "etcd.cache.prefix=/config",
+                "etcd.cache.max-entries=100");
+
+        final EtcdCache cache = context.getBean(EtcdCache.class);
+        assertEquals("1", cache.get("config", "a").getValue());
+        context.getBean(EtcdService.class).get("config", "a");
+
+        final Health health = context.getBean("etcdHealthIndicator", HealthIndicator.class).health();
+        assertEquals(Status.UP, health.getStatus());
+        assertTrue(((Number) health.getDetails().get("index")).longValue() > 0);
+
+        final Map<String, Number> published = new HashMap<>();
+        for (Metric<?> metric : context.getBean("etcdPublicMetrics", PublicMetrics.class).metrics()) {
+            published.put(metric.getName(), metric.getValue());
+        }
+        assertEquals(0, published.get("etcd.machines.ejected").intValue());
+        assertEquals(1, published.get("etcd.get.count").intValue());
+        assertEquals(1, published.get("etcd.cache.hits").intValue());
+        assertFalse(published.containsKey("etcd.delete.count"));
+    }
+
+    @Test
+    public void testHealthDownWhenUnreachable() throws Exception {
+        final StubEtcdServer stoppedServer = new StubEtcdServer();
+        final String stoppedUri = stoppedServer.getUri().toString();
+        stoppedServer.stop();
+        load("etcd.machines:" + stoppedUri);
+
+        final Health health = context.getBean("etcdHealthIndicator", HealthIndicator.class).health();
+        assertEquals(Status.DOWN, health.getStatus());
+    }
+
+    @Test
+    public void testMetricsDisabled() throws Exception {
+        load("etcd.machines:" + server.getUri(), "etcd.metrics-enabled=false");
+
+        assertTrue(context.getBeansOfType(EtcdMetrics.class).isEmpty());
+        assertSame(EtcdMetrics.NOOP, context.getBean(EtcdService.class).getMetrics());
+    }
+
+    @Test
+    public void testWithoutHttpClient() throws Exception {
+        final ClassLoader withoutHttpClient = new HidingClassLoader("org.apache.http.");
+        @SuppressWarnings("unchecked")
+        final Callable<String> run = (Callable<String>) withoutHttpClient.loadClass(PutAndGet.class.getName())
+                .getConstructor(String.class).newInstance(server.getUri().toString());
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(withoutHttpClient);
+        try {
+            assertEquals("value", run.call());
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+
+    /**
+     * @param pairs such as <code>"etcd.ejection-time=5000"</code>, using a colon instead for values that
+     *              themselves contain one, such as URLs
+     */
+    private void load(String... pairs) {
+        context = new AnnotationConfigApplicationContext();
+        EnvironmentTestUtils.addEnvironment(context, pairs);
+        context.register(PropertyPlaceholderAutoConfiguration.class, EtcdAutoConfiguration.class);
+        context.refresh();
+    }
+
+    /**
+     * Loads the classes of the test's own classpath itself, apart from the hidden packages
+     */
+    private static class HidingClassLoader extends URLClassLoader {
+        private final String hiddenPackage;
+
+        HidingClassLoader(String hiddenPackage) throws MalformedURLException {
+            super(classpath(), ClassLoader.getSystemClassLoader().getParent());
+            this.hiddenPackage = hiddenPackage;
+        }
+
+        private static URL[] classpath() throws MalformedURLException {
+            final String classpath = System.getProperty("surefire.test.class.path",
+                    System.getProperty("java.class.path"));
+            final List<URL> urls = new ArrayList<>();
+            for (String entry : classpath.split(File.pathSeparator)) {
+                urls.add(new File(entry).toURI().toURL());
+            }
+            return urls.toArray(new URL[urls.size()]);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith(hiddenPackage)) {
+                throw new ClassNotFoundException(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        @Override
+        public URL findResource(String name) {
+            return name.startsWith(hiddenPackage.replace('.', '/')) ? null : super.findResource(name);
+        }
+    }
+
+    /**
+     * Runs the auto-configuration within a {@link HidingClassLoader}
+     */
+    public static class PutAndGet implements Callable<String> {
+        private final String machine;
+
+        public PutAndGet(String machine) {
+            this.machine = machine;
+        }
+
+        @Override
+        public String call() throws Exception {
+            final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+            context.setClassLoader(PutAndGet.class.getClassLoader());
+            try {
+                EnvironmentTestUtils.addEnvironment(context, "etcd.machines:" + machine,
+                        "etcd.transport.read-timeout=1000");
+                context.register(PropertyPlaceholderAutoConfiguration.class, EtcdAutoConfiguration.class);
+                context.refresh();
+
+                final EtcdService etcdService = context.getBean(EtcdService.class);
+                etcdService.put("value", "one");
+                return etcdService.get("one").getValue();
+            } finally {
+                context.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package me.itzg.etcd.keys;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Geoff Bourne
+ * @since 7/9/2015
+ */
+public class CompactTreeTest {
+
+    @Test
+    public void testLookupAndConversion() throws Exception {
+        final Node b = leaf("/config/b", "2", 7);
+        b.setExpiration(new Date(1436400000000L));
+        b.setTtl(60);
+        final Node root = dir("/config", 2,
+                b,
+                leaf("/config/a", "\u00fcber", 5),
+                dir("/config/nested", 3, leaf("/config/nested/c", "3", 6)));
+
+        final CompactTree tree = CompactTree.from(root);
+
+        assertEquals("/config", tree.getBaseKey());
+        assertEquals(5, tree.size());
+        assertEquals("\u00fcber", tree.find("a").getValue());
+        assertEquals(5, tree.find("a").getValueLength());
+        assertEquals("3", tree.find("/nested/c/").getValue());
+        assertNull(tree.find("nested/missing"));
+        assertNull(tree.find("a/below-leaf"));
+        assertSame(tree.getRoot(), tree.find(""));
+
+        // children are sorted regardless of the order etcd returned them
+        final CompactTree.CompactNode rootNode = tree.getRoot();
+        assertEquals("a", rootNode.getChildren().get(0).getName());
+        assertEquals("b", rootNode.getChildren().get(1).getName());
+
+        final Node converted = tree.get("b");
+        assertEquals("/config/b", converted.getKey());
+        assertEquals("2", converted.getValue());
+        assertEquals(7, converted.getModifiedIndex());
+        assertEquals(60, converted.getTtl());
+        assertEquals(1436400000000L, converted.getExpiration().getTime());
+
+        final Node nested = tree.get("nested");
+        assertTrue(nested.isDir());
+        assertEquals("/config/nested/c", nested.getNodes().get(0).getKey());
+
+        assertEquals("/config/a", tree.toNode().getNodes().get(0).getKey());
+    }
+
+    @Test
+    public void testNamesShared() throws Exception {
+        final Node root = dir(null, 1,
+                dir("/one", 2, leaf("/one/" + new String("host"), "a", 3)),
+                dir("/two", 4, leaf("/two/" + new String("host"), "b", 5)));
+
+        final CompactTree tree = CompactTree.from(root);
+
+        assertEquals("/", tree.getBaseKey());
+        assertSame(tree.find("one/host").getName(), tree.find("two/host").getName());
+        assertEquals("/two/host", tree.get("two/host").getKey());
+    }
+
+    private static Node leaf(String key, String value, int index) {
+        final Node node = new Node();
+        node.setKey(key);
+        node.setValue(value);
+        node.setCreatedIndex(index);
+        node.setModifiedIndex(index);
+        return node;
+    }
+
+    private static Node dir(String key, int index, Node... children) {
+        final Node node = new Node();
+        node.setKey(key);
+        node.setDir(true);
+        node.setCreatedIndex(index);
+        node.setModifiedIndex(index);
+        node.setNodes(Arrays.asList(children));
+        return node;
+    }
+}